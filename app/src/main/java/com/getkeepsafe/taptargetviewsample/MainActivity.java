@@ -3,7 +3,6 @@ package com.getkeepsafe.taptargetviewsample;
 import android.content.DialogInterface;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 
 import androidx.core.content.ContextCompat;
@@ -38,10 +37,9 @@ public class MainActivity extends AppCompatActivity {
     // We load a drawable and create a location to show a tap target here
     // We need the display to get the width and height at this point in time
     final Display display = getWindowManager().getDefaultDisplay();
-    // Load our little droid guy
-    final Drawable droid = ContextCompat.getDrawable(this, R.drawable.ic_android_black_24dp);
-    // Tell our droid buddy where we want him to appear
-    final Rect droidTarget = new Rect(0, 0, droid.getIntrinsicWidth() * 2, droid.getIntrinsicHeight() * 2);
+    // Tell our droid buddy where we want him to appear, he is 24dp and we want twice that
+    final int droidTargetSize = (int) (48 * getResources().getDisplayMetrics().density);
+    final Rect droidTarget = new Rect(0, 0, droidTargetSize, droidTargetSize);
     // Using deprecated methods makes you look way cool
     droidTarget.offset(display.getWidth() / 2, display.getHeight() / 2);
 
@@ -66,7 +64,8 @@ public class MainActivity extends AppCompatActivity {
             // This tap target will target our droid buddy at the given target rect
             TapTarget.forBounds(droidTarget, "Oh look!", "You can point to any part of the screen. You also can't cancel this one!")
                 .cancelable(false)
-                .icon(droid)
+                // Our little droid guy is loaded in the background while the target shows
+                .icon(R.drawable.ic_android_black_24dp)
                 .id(4)
         )
         .listener(new TapTargetSequence.Listener() {
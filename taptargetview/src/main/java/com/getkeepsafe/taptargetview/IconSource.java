@@ -0,0 +1,195 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.Resources.Theme;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import androidx.annotation.DrawableRes;
+import androidx.annotation.Nullable;
+import androidx.core.content.res.ResourcesCompat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An icon that is decoded and rasterized on a background thread, see {@link TapTarget#icon(int)}.
+ * Icons are scaled down to fit into the target circle, smaller icons keep their intrinsic size.
+ */
+abstract class IconSource {
+  interface Callback {
+    /** Called on the main thread with an icon that has its bounds set, or null if it failed **/
+    void onIconLoaded(@Nullable Drawable icon);
+  }
+
+  @Nullable
+  private static Executor executor;
+  private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  static IconSource of(@DrawableRes final int resource) {
+    return new IconSource() {
+      @Override
+      Drawable decode(Context context, Resources resources, Theme theme, int maxSize) {
+        return ResourcesCompat.getDrawable(resources, resource, theme);
+      }
+    };
+  }
+
+  static IconSource of(final Uri uri) {
+    return new IconSource() {
+      @Override
+      Drawable decode(Context context, Resources resources, Theme theme, int maxSize)
+          throws IOException {
+        return new BitmapDrawable(resources, decodeSampled(context, uri, maxSize));
+      }
+    };
+  }
+
+  static IconSource of(final Callable<Drawable> supplier) {
+    return new IconSource() {
+      @Override
+      Drawable decode(Context context, Resources resources, Theme theme, int maxSize)
+          throws Exception {
+        return supplier.call();
+      }
+    };
+  }
+
+  /**
+   * Returns the decoded icon, called on a background thread. Resources are resolved against the
+   * given theme of the host, the application context is only meant for content resolution.
+   */
+  @Nullable
+  abstract Drawable decode(Context context, Resources resources, Theme theme, int maxSize)
+      throws Exception;
+
+  /** Decodes the icon off the main thread using the given context's theme **/
+  void load(Context context, final int maxSize, final Callback callback) {
+    // The theme and resources are safe to read off the main thread and, unlike the context
+    // itself, don't keep an activity alive while the icon is decoding
+    final Context appContext = context.getApplicationContext();
+    final Resources resources = context.getResources();
+    final Theme theme = context.getTheme();
+    executor().execute(new Runnable() {
+      @Override
+      public void run() {
+        Drawable icon;
+        try {
+          final Drawable decoded = decode(appContext, resources, theme, maxSize);
+          icon = decoded != null ? rasterize(resources, decoded, maxSize) : null;
+        } catch (Exception e) {
+          // A missing icon is not worth crashing over, the target is simply drawn without one
+          icon = null;
+        }
+
+        final Drawable result = icon;
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            callback.onIconLoaded(result);
+          }
+        });
+      }
+    });
+  }
+
+  private static synchronized Executor executor() {
+    if (executor == null) {
+      executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+          return new Thread(new Runnable() {
+            @Override
+            public void run() {
+              Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+              runnable.run();
+            }
+          }, "TapTargetIconLoader");
+        }
+      });
+    }
+    return executor;
+  }
+
+  /** Draws the given drawable into a bitmap no larger than maxSize on either side **/
+  static Drawable rasterize(Resources resources, Drawable drawable, int maxSize) {
+    int width = drawable.getIntrinsicWidth();
+    int height = drawable.getIntrinsicHeight();
+    if (width <= 0 || height <= 0) {
+      width = maxSize;
+      height = maxSize;
+    }
+
+    final float scale = Math.min(1.0f, (float) maxSize / Math.max(width, height));
+    width = Math.max(1, Math.round(width * scale));
+    height = Math.max(1, Math.round(height * scale));
+
+    final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    drawable.setBounds(0, 0, width, height);
+    drawable.draw(new Canvas(bitmap));
+
+    final BitmapDrawable icon = new BitmapDrawable(resources, bitmap);
+    icon.setBounds(0, 0, width, height);
+    return icon;
+  }
+
+  /** Decodes the image at the given uri, sub-sampled to roughly the given size **/
+  static Bitmap decodeSampled(Context context, Uri uri, int maxSize) throws IOException {
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    decodeStream(context, uri, options);
+
+    options.inSampleSize = 1;
+    while (options.outWidth / (options.inSampleSize * 2) >= maxSize
+        && options.outHeight / (options.inSampleSize * 2) >= maxSize) {
+      options.inSampleSize *= 2;
+    }
+    options.inJustDecodeBounds = false;
+
+    final Bitmap bitmap = decodeStream(context, uri, options);
+    if (bitmap == null) {
+      throw new IOException("Could not decode " + uri);
+    }
+    return bitmap;
+  }
+
+  @Nullable
+  private static Bitmap decodeStream(Context context, Uri uri, BitmapFactory.Options options)
+      throws IOException {
+    final InputStream stream = context.getContentResolver().openInputStream(uri);
+    if (stream == null) {
+      throw new IOException("Could not open " + uri);
+    }
+    try {
+      return BitmapFactory.decodeStream(stream, null, options);
+    } finally {
+      stream.close();
+    }
+  }
+}
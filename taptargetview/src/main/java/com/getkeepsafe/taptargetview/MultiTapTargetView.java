@@ -0,0 +1,587 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.animation.ValueAnimator;
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.Region;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewManager;
+import android.view.ViewTreeObserver;
+import android.view.animation.AccelerateDecelerateInterpolator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Highlights several {@link TapTarget}s at once within a single overlay.
+ * <p>
+ * Unlike chaining multiple {@link TapTargetView}s, every target is drawn in the same
+ * {@link #onDraw(Canvas)} pass behind one shared dim, and all of them are driven by a single set
+ * of animators. Taps are hit-tested against every target in one pass and reported through
+ * {@link Listener#onTargetClick(MultiTapTargetView, TapTarget)}.
+ * <p>
+ * Each target keeps its own target circle color, text colors and typefaces. The shared dim is
+ * taken from the first target only: its dim color, or else its outer circle color, or else the
+ * theme's primary color. The dim and outer circle colors of the other targets are ignored.
+ * <p>
+ * This class should not be instantiated directly. Instead, please use the
+ * {@link #showFor(Activity, List, Listener)} static factory method instead.
+ */
+@SuppressLint("ViewConstructor")
+public class MultiTapTargetView extends View {
+  private boolean isDismissed = false;
+  private boolean isDismissing = false;
+  private boolean isInteractable = false;
+
+  final int TARGET_PADDING;
+  final int TEXT_PADDING;
+  final int TEXT_SPACING;
+  final int TEXT_MAX_WIDTH;
+
+  final ViewManager parent;
+  final List<TapTarget> targets;
+  final Spot[] spots;
+
+  final Paint dimPaint;
+  final Path holesPath;
+
+  boolean cancelable;
+  boolean visible;
+  // Incremented on every layout pass, so that ready callbacks of an earlier pass are ignored
+  int layoutGeneration;
+
+  float lerp;
+  float dismissStartLerp;
+  float pulseLerp;
+
+  float lastTouchX;
+  float lastTouchY;
+
+  Listener listener;
+
+  /** Per-target drawing state, resolved once per show */
+  static class Spot {
+    final TapTarget target;
+    final Rect bounds = new Rect();
+    final Rect textBounds = new Rect();
+    final TextPaint titlePaint = new TextPaint();
+    final TextPaint descriptionPaint = new TextPaint();
+    final Paint circlePaint = new Paint();
+    final Paint pulsePaint = new Paint();
+    final int radius;
+    // The layout pass this spot last reported its bounds for
+    int generation = -1;
+
+    @Nullable
+    StaticLayout titleLayout;
+    @Nullable
+    StaticLayout descriptionLayout;
+
+    Spot(TapTarget target, int radius) {
+      this.target = target;
+      this.radius = radius;
+    }
+  }
+
+  public static MultiTapTargetView showFor(Activity activity, TapTarget... targets) {
+    return showFor(activity, Arrays.asList(targets), null);
+  }
+
+  public static MultiTapTargetView showFor(Activity activity, List<TapTarget> targets,
+                                           @Nullable Listener listener) {
+    if (activity == null) throw new IllegalArgumentException("Activity is null");
+
+    final ViewGroup decor = (ViewGroup) activity.getWindow().getDecorView();
+    final ViewGroup.LayoutParams layoutParams = new ViewGroup.LayoutParams(
+        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+    final MultiTapTargetView view = new MultiTapTargetView(activity, decor, targets, listener);
+    decor.addView(view, layoutParams);
+
+    return view;
+  }
+
+  public static class Listener {
+    /** Signals that the user has clicked inside of one of the targets **/
+    public void onTargetClick(MultiTapTargetView view, TapTarget target) {
+      view.dismiss(true);
+    }
+
+    /** If cancelable, signals that the user has clicked outside of every target **/
+    public void onTargetCancel(MultiTapTargetView view) {
+      view.dismiss(false);
+    }
+
+    /**
+     * Signals that the overlay has been dismissed
+     * @param userInitiated Whether the user caused this action
+     */
+    public void onTargetDismissed(MultiTapTargetView view, boolean userInitiated) {
+    }
+  }
+
+  final ValueAnimator expandAnimation = new FloatValueAnimatorBuilder()
+      .duration(250)
+      .interpolator(new AccelerateDecelerateInterpolator())
+      .onUpdate(new FloatValueAnimatorBuilder.UpdateListener() {
+        @Override
+        public void onUpdate(float lerpTime) {
+          lerp = lerpTime;
+          invalidate();
+        }
+      })
+      .onEnd(new FloatValueAnimatorBuilder.EndListener() {
+        @Override
+        public void onEnd() {
+          if (isDismissing || isDismissed) {
+            // Canceled by a dismissal, which takes over from here
+            return;
+          }
+          pulseAnimation.start();
+          isInteractable = true;
+        }
+      })
+      .build();
+
+  final ValueAnimator pulseAnimation = new FloatValueAnimatorBuilder()
+      .duration(1000)
+      .repeat(ValueAnimator.INFINITE)
+      .interpolator(new AccelerateDecelerateInterpolator())
+      .onUpdate(new FloatValueAnimatorBuilder.UpdateListener() {
+        @Override
+        public void onUpdate(float lerpTime) {
+          pulseLerp = lerpTime;
+          invalidate();
+        }
+      })
+      .build();
+
+  final ValueAnimator dismissAnimation = new FloatValueAnimatorBuilder(true)
+      .duration(250)
+      .interpolator(new AccelerateDecelerateInterpolator())
+      .onUpdate(new FloatValueAnimatorBuilder.UpdateListener() {
+        @Override
+        public void onUpdate(float lerpTime) {
+          // Contracts from wherever the expand was when the dismissal started
+          lerp = dismissStartLerp * lerpTime;
+          invalidate();
+        }
+      })
+      .onEnd(new FloatValueAnimatorBuilder.EndListener() {
+        @Override
+        public void onEnd() {
+          finishDismiss(true);
+        }
+      })
+      .build();
+
+  private final ValueAnimator[] animators = new ValueAnimator[]
+      {expandAnimation, pulseAnimation, dismissAnimation};
+
+  private final ViewTreeObserver.OnGlobalLayoutListener globalLayoutListener;
+
+  /**
+   * This constructor should only be used directly for very specific use cases not covered by
+   * the static factory methods.
+   *
+   * @param context The host context
+   * @param parent The parent that this view will become a child of
+   * @param targets The {@link TapTarget}s to highlight together
+   * @param userListener Optional. The {@link Listener} instance for this view
+   */
+  public MultiTapTargetView(Context context, ViewManager parent, List<TapTarget> targets,
+                            @Nullable Listener userListener) {
+    super(context);
+    if (targets == null || targets.isEmpty()) {
+      throw new IllegalArgumentException("Targets cannot be null or empty");
+    }
+
+    this.parent = parent;
+    this.targets = new ArrayList<>(targets);
+    this.listener = userListener != null ? userListener : new Listener();
+
+    TARGET_PADDING = UiUtil.dp(context, 20);
+    TEXT_PADDING = UiUtil.dp(context, 40);
+    TEXT_SPACING = UiUtil.dp(context, 8);
+    TEXT_MAX_WIDTH = UiUtil.dp(context, 360);
+
+    holesPath = new Path();
+    dimPaint = new Paint();
+    dimPaint.setAntiAlias(true);
+
+    spots = new Spot[this.targets.size()];
+    cancelable = true;
+    for (int i = 0; i < spots.length; ++i) {
+      final TapTarget target = this.targets.get(i);
+      if (target == null) throw new IllegalArgumentException("Target cannot be null");
+      spots[i] = new Spot(target, UiUtil.dp(context, target.targetRadius));
+      cancelable &= target.cancelable;
+    }
+
+    applyTargetOptions(context);
+
+    globalLayoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+      @Override
+      public void onGlobalLayout() {
+        if (isDismissing) {
+          return;
+        }
+
+        final int generation = ++layoutGeneration;
+        for (final Spot spot : spots) {
+          spot.target.onReady(new Runnable() {
+            @Override
+            public void run() {
+              if (generation == layoutGeneration) {
+                onSpotReady(spot, generation);
+              }
+            }
+          });
+        }
+      }
+    };
+
+    getViewTreeObserver().addOnGlobalLayoutListener(globalLayoutListener);
+
+    setFocusableInTouchMode(true);
+    setClickable(true);
+    setOnClickListener(new OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        if (listener == null || !isInteractable) return;
+
+        final Spot hit = findSpotAt(lastTouchX, lastTouchY);
+        if (hit != null) {
+          isInteractable = false;
+          listener.onTargetClick(MultiTapTargetView.this, hit.target);
+        } else if (cancelable) {
+          isInteractable = false;
+          listener.onTargetCancel(MultiTapTargetView.this);
+        }
+      }
+    });
+  }
+
+  protected void applyTargetOptions(Context context) {
+    final boolean isDark = UiUtil.themeIntAttr(context, "isLightTheme") == 0;
+    final TapTarget first = spots[0].target;
+
+    // All spots share one dim, which is taken from the first target
+    final Integer dimColor = first.dimColorInt(context);
+    final Integer outerCircleColor = first.outerCircleColorInt(context);
+    if (dimColor != null) {
+      dimPaint.setColor(dimColor);
+    } else if (outerCircleColor != null) {
+      dimPaint.setColor(outerCircleColor);
+    } else {
+      dimPaint.setColor(UiUtil.themeIntAttr(context, "colorPrimary"));
+    }
+
+    for (final Spot spot : spots) {
+      final TapTarget target = spot.target;
+
+      final Integer targetCircleColor = target.targetCircleColorInt(context);
+      spot.circlePaint.setAntiAlias(true);
+      spot.circlePaint.setColor(targetCircleColor != null
+          ? targetCircleColor : (isDark ? Color.BLACK : Color.WHITE));
+      spot.pulsePaint.setAntiAlias(true);
+      spot.pulsePaint.setColor(spot.circlePaint.getColor());
+
+      final Integer titleTextColor = target.titleTextColorInt(context);
+      spot.titlePaint.setAntiAlias(true);
+      spot.titlePaint.setTextSize(target.titleTextSizePx(context));
+      spot.titlePaint.setTypeface(target.titleTypeface != null
+          ? target.titleTypeface : Typeface.create("sans-serif-medium", Typeface.NORMAL));
+      spot.titlePaint.setColor(titleTextColor != null
+          ? titleTextColor : (isDark ? Color.BLACK : Color.WHITE));
+
+      final Integer descriptionTextColor = target.descriptionTextColorInt(context);
+      spot.descriptionPaint.setAntiAlias(true);
+      spot.descriptionPaint.setTextSize(target.descriptionTextSizePx(context));
+      spot.descriptionPaint.setTypeface(target.descriptionTypeface != null
+          ? target.descriptionTypeface : Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL));
+      spot.descriptionPaint.setColor(descriptionTextColor != null
+          ? descriptionTextColor : spot.titlePaint.getColor());
+    }
+  }
+
+  void onSpotReady(Spot spot, int generation) {
+    final int[] offset = new int[2];
+    getLocationOnScreen(offset);
+    spot.bounds.set(spot.target.bounds());
+    spot.bounds.offset(-offset[0], -offset[1]);
+    spot.generation = generation;
+
+    for (final Spot other : spots) {
+      if (other.generation != generation) {
+        return;
+      }
+    }
+
+    calculateDimensions();
+    requestFocus();
+
+    if (!visible) {
+      visible = true;
+      expandAnimation.start();
+    }
+  }
+
+  void calculateDimensions() {
+    final int textWidth = Math.min(getWidth(), TEXT_MAX_WIDTH) - TEXT_PADDING * 2;
+
+    holesPath.reset();
+    for (int i = 0; i < spots.length; ++i) {
+      final Spot spot = spots[i];
+      final int centerX = spot.bounds.centerX();
+      final int centerY = spot.bounds.centerY();
+      holesPath.addCircle(centerX, centerY, spot.radius, Path.Direction.CW);
+
+      if (textWidth <= 0) {
+        spot.titleLayout = null;
+        spot.descriptionLayout = null;
+        spot.textBounds.setEmpty();
+        continue;
+      }
+
+      spot.titleLayout = new StaticLayout(spot.target.title, spot.titlePaint, textWidth,
+          Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+      spot.descriptionLayout = spot.target.description == null ? null
+          : new StaticLayout(spot.target.description, spot.descriptionPaint, textWidth,
+              Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+
+      final int width = (int) Math.ceil(Math.max(
+          maxLineWidth(spot.titleLayout), maxLineWidth(spot.descriptionLayout)));
+      final int height = spot.titleLayout.getHeight() + (spot.descriptionLayout == null
+          ? 0 : spot.descriptionLayout.getHeight() + TEXT_SPACING);
+
+      final int left = Math.max(TEXT_PADDING,
+          Math.min(centerX - width / 2, getWidth() - TEXT_PADDING - width));
+      int top = centerY + spot.radius + TARGET_PADDING;
+      if (top + height > getHeight()) {
+        top = centerY - spot.radius - TARGET_PADDING - height;
+      }
+      spot.textBounds.set(left, top, left + width, top + height);
+
+      // Labels of neighbouring targets (ie. toolbar actions) are stacked rather than overlapped.
+      // A label that is pushed down may land on another one, each pass moves it below at least
+      // one more of the i labels before it, so i + 1 passes always settle it
+      for (int pass = 0; pass <= i; ++pass) {
+        boolean moved = false;
+        for (int j = 0; j < i; ++j) {
+          final Rect other = spots[j].textBounds;
+          if (Rect.intersects(other, spot.textBounds)) {
+            spot.textBounds.offsetTo(left, other.bottom + TEXT_SPACING * 2);
+            moved = true;
+          }
+        }
+        if (!moved) {
+          break;
+        }
+      }
+    }
+  }
+
+  float maxLineWidth(@Nullable Layout layout) {
+    if (layout == null) {
+      return 0;
+    }
+
+    float max = 0;
+    for (int i = 0; i < layout.getLineCount(); ++i) {
+      max = Math.max(max, layout.getLineWidth(i));
+    }
+    return max;
+  }
+
+  @Nullable
+  Spot findSpotAt(float x, float y) {
+    for (final Spot spot : spots) {
+      final float dx = x - spot.bounds.centerX();
+      final float dy = y - spot.bounds.centerY();
+      if (dx * dx + dy * dy <= spot.radius * spot.radius) {
+        return spot;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    onDismiss(false);
+  }
+
+  void onDismiss(boolean userInitiated) {
+    if (isDismissed) return;
+
+    isDismissing = false;
+    isDismissed = true;
+
+    for (final ValueAnimator animator : animators) {
+      animator.cancel();
+      animator.removeAllUpdateListeners();
+    }
+
+    ViewUtil.removeOnGlobalLayoutListener(getViewTreeObserver(), globalLayoutListener);
+    visible = false;
+
+    if (listener != null) {
+      listener.onTargetDismissed(this, userInitiated);
+    }
+  }
+
+  @Override
+  protected void onDraw(Canvas c) {
+    // Once visible, the previous pass keeps being drawn until every spot reported again
+    if (isDismissed || !visible) return;
+
+    final int textAlpha = (int) (delayedLerp(lerp, 0.7f) * 255);
+    final float circleLerp = Math.min(1.0f, lerp * 1.5f);
+    final float pulse = delayedLerp(pulseLerp, 0.5f);
+
+    int saveCount = c.save();
+    {
+      c.clipPath(holesPath, Region.Op.DIFFERENCE);
+      final int dimAlpha = (int) (spots[0].target.outerCircleAlpha * 255 * circleLerp);
+      dimPaint.setAlpha(dimAlpha);
+      c.drawPaint(dimPaint);
+
+      if (pulse > 0) {
+        for (final Spot spot : spots) {
+          spot.pulsePaint.setAlpha((int) ((1.0f - pulse) * 255 * circleLerp));
+          c.drawCircle(spot.bounds.centerX(), spot.bounds.centerY(),
+              (1.0f + pulse) * spot.radius, spot.pulsePaint);
+        }
+      }
+    }
+    c.restoreToCount(saveCount);
+
+    for (final Spot spot : spots) {
+      final int centerX = spot.bounds.centerX();
+      final int centerY = spot.bounds.centerY();
+      final int circleAlpha = (int) (255 * circleLerp);
+
+      if (!spot.target.transparentTarget) {
+        spot.circlePaint.setAlpha(circleAlpha);
+        c.drawCircle(centerX, centerY, spot.radius * circleLerp, spot.circlePaint);
+      }
+
+      if (spot.target.icon != null) {
+        saveCount = c.save();
+        c.translate(centerX - spot.target.icon.getBounds().width() / 2,
+            centerY - spot.target.icon.getBounds().height() / 2);
+        spot.target.icon.setAlpha(circleAlpha);
+        spot.target.icon.draw(c);
+        c.restoreToCount(saveCount);
+      }
+
+      if (spot.titleLayout != null) {
+        saveCount = c.save();
+        c.translate(spot.textBounds.left, spot.textBounds.top);
+        spot.titlePaint.setAlpha(textAlpha);
+        spot.titleLayout.draw(c);
+        if (spot.descriptionLayout != null) {
+          c.translate(0, spot.titleLayout.getHeight() + TEXT_SPACING);
+          spot.descriptionPaint.setAlpha((int) (spot.target.descriptionTextAlpha * textAlpha));
+          spot.descriptionLayout.draw(c);
+        }
+        c.restoreToCount(saveCount);
+      }
+    }
+  }
+
+  @Override
+  public boolean onTouchEvent(MotionEvent e) {
+    lastTouchX = e.getX();
+    lastTouchY = e.getY();
+    return super.onTouchEvent(e);
+  }
+
+  @Override
+  public boolean onKeyDown(int keyCode, KeyEvent event) {
+    if (isVisible() && cancelable && keyCode == KeyEvent.KEYCODE_BACK) {
+      event.startTracking();
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public boolean onKeyUp(int keyCode, KeyEvent event) {
+    if (isVisible() && isInteractable && cancelable
+        && keyCode == KeyEvent.KEYCODE_BACK && event.isTracking() && !event.isCanceled()) {
+      isInteractable = false;
+      listener.onTargetCancel(this);
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Dismiss this view
+   * @param tappedTarget If the user tapped one of the targets or not
+   */
+  public void dismiss(boolean tappedTarget) {
+    isDismissing = true;
+    pulseAnimation.cancel();
+    expandAnimation.cancel();
+    if (!visible) {
+      finishDismiss(tappedTarget);
+      return;
+    }
+    pulseLerp = 0;
+    dismissStartLerp = lerp;
+    dismissAnimation.start();
+  }
+
+  private void finishDismiss(boolean userInitiated) {
+    onDismiss(userInitiated);
+    ViewUtil.removeView(parent, this);
+  }
+
+  /** Returns whether this view is visible or not **/
+  public boolean isVisible() {
+    return !isDismissed && visible;
+  }
+
+  float delayedLerp(float lerp, float threshold) {
+    if (lerp < threshold) {
+      return 0.0f;
+    }
+
+    return (lerp - threshold) / (1.0f - threshold);
+  }
+}
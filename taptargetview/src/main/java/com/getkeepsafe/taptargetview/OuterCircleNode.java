@@ -0,0 +1,121 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.Outline;
+import android.graphics.Paint;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.os.Build;
+
+import androidx.annotation.ColorInt;
+
+/**
+ * Hosts the outer circle and its elevation shadow in a dedicated {@link RenderNode}.
+ * <p>
+ * The circle and its outline are recorded once at their fully expanded size. Animations only
+ * change the node's scale and alpha properties, so the shadow geometry doesn't have to be
+ * re-computed on every frame.
+ */
+@TargetApi(Build.VERSION_CODES.Q)
+class OuterCircleNode {
+  private final RenderNode node = new RenderNode("TapTargetOuterCircle");
+  private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Outline outline = new Outline();
+  private final float elevation;
+  private final int shadowOffset;
+
+  private int recordedRadius = -1;
+  private int recordedColor;
+  private int centerX;
+  private int centerY;
+
+  OuterCircleNode(float elevation, int shadowOffset) {
+    this.elevation = elevation;
+    this.shadowOffset = shadowOffset;
+  }
+
+  /**
+   * Draws the outer circle at the given radius and alpha, re-recording the node only if the
+   * expanded radius or color changed.
+   *
+   * @return Whether the circle was drawn. This will be false for software canvases.
+   */
+  boolean draw(Canvas canvas, int[] center, int expandedRadius, float radius, int alpha,
+               @ColorInt int color) {
+    if (!canvas.isHardwareAccelerated() || expandedRadius <= 0) {
+      return false;
+    }
+
+    // Alpha is applied through the node so that the shadow fades along with the circle
+    color |= 0xFF000000;
+    if (expandedRadius != recordedRadius || color != recordedColor) {
+      record(expandedRadius, color);
+      centerX = Integer.MIN_VALUE;
+    }
+
+    if (center[0] != centerX || center[1] != centerY) {
+      centerX = center[0];
+      centerY = center[1];
+      node.setPosition(centerX - expandedRadius, centerY - expandedRadius,
+          centerX + expandedRadius, centerY + expandedRadius);
+    }
+
+    if (radius <= 0) {
+      return true;
+    }
+
+    final float scale = radius / expandedRadius;
+    node.setScaleX(scale);
+    node.setScaleY(scale);
+    node.setAlpha(alpha / 255.0f);
+
+    canvas.enableZ();
+    canvas.drawRenderNode(node);
+    canvas.disableZ();
+    return true;
+  }
+
+  /** Drops the recorded display list, it will be recorded again on the next draw **/
+  void release() {
+    node.discardDisplayList();
+    recordedRadius = -1;
+  }
+
+  private void record(int radius, @ColorInt int color) {
+    recordedRadius = radius;
+    recordedColor = color;
+
+    paint.setColor(color);
+    final int size = radius * 2;
+    final RecordingCanvas canvas = node.beginRecording(size, size);
+    try {
+      canvas.drawCircle(radius, radius, radius, paint);
+    } finally {
+      node.endRecording();
+    }
+
+    outline.setOval(0, 0, size, size);
+    outline.setAlpha(1.0f);
+    outline.offset(0, shadowOffset);
+    node.setOutline(outline);
+    node.setElevation(elevation);
+    node.setPivotX(radius);
+    node.setPivotY(radius);
+  }
+}
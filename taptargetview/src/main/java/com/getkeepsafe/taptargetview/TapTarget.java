@@ -19,15 +19,21 @@ import android.content.Context;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.text.Layout;
+import android.text.TextUtils;
 import androidx.annotation.ColorInt;
 import androidx.annotation.ColorRes;
 import androidx.annotation.DimenRes;
+import androidx.annotation.DrawableRes;
 import androidx.annotation.IdRes;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.appcompat.widget.Toolbar;
 import android.view.View;
 
+import java.util.concurrent.Callable;
+
 /**
  * Describes the properties and options for a {@link TapTargetView}.
  * <p>
@@ -49,6 +55,8 @@ public class TapTarget {
 
   Rect bounds;
   Drawable icon;
+  @Nullable
+  IconSource iconSource;
   Typeface titleTypeface;
   Typeface descriptionTypeface;
 
@@ -76,6 +84,19 @@ public class TapTarget {
 
   private int titleTextSize = 20;
   private int descriptionTextSize = 18;
+  // Text sizes in pixels resolved ahead of time by a TapTargetSpec, these take precedence
+  int resolvedTitleTextSize = -1;
+  int resolvedDescriptionTextSize = -1;
+  int titleMaxLines = Integer.MAX_VALUE;
+  int descriptionMaxLines = Integer.MAX_VALUE;
+  TextUtils.TruncateAt ellipsize = TextUtils.TruncateAt.END;
+  int breakStrategy = Layout.BREAK_STRATEGY_SIMPLE;
+  int hyphenationFrequency = Layout.HYPHENATION_FREQUENCY_NONE;
+  float lineSpacingMultiplier = 1.0f;
+  float lineSpacingExtra = 0.0f;
+  boolean autoFitText = false;
+  boolean passThroughTouches = false;
+  private int autoFitMinTextSize = 12;
   int id = -1;
 
   boolean drawShadow = false;
@@ -88,6 +109,13 @@ public class TapTarget {
   boolean drawBehindNavigationBar = true;
 
   boolean forceCenteredTarget = false;
+  boolean trackTarget = false;
+  boolean renderThreadAnimations = false;
+  float pulseFrameRate = 0;
+  @Nullable
+  TapTargetTiming timing;
+  @Nullable
+  TapTargetTheme theme;
 
   /**
    * Return a tap target for the overflow button from the given toolbar
@@ -177,6 +205,9 @@ public class TapTarget {
 
   /** Return a tap target for the specified view **/
   public static TapTarget forView(View view, CharSequence title, @Nullable CharSequence description) {
+    if (view == null) {
+      throw new IllegalArgumentException("Given null view to target");
+    }
     return new ViewTapTarget(view, title, description);
   }
 
@@ -226,6 +257,69 @@ public class TapTarget {
     return this;
   }
 
+  /**
+   * Specify whether the target's position should be re-sampled on every frame. This allows the
+   * highlight to follow views that scroll or animate without triggering a full relayout.
+   */
+  public TapTarget trackTarget(boolean track) {
+    this.trackTarget = track;
+    return this;
+  }
+
+  /**
+   * Specify whether the expand and dismiss animations should run on the RenderThread where
+   * available (API 21+, hardware accelerated). These keep animating smoothly while the main
+   * thread is busy, at the cost of a simplified circular reveal and conceal in place of the
+   * default animations.
+   */
+  public TapTarget renderThreadAnimations(boolean enabled) {
+    this.renderThreadAnimations = enabled;
+    return this;
+  }
+
+  /**
+   * Specify the frame rate of the idle pulse animation. The pulse is a slow breathing effect, so
+   * on high refresh rate displays it can run well below the display's refresh rate, which allows
+   * variable refresh rate panels to drop their rate while the target is idle. Expand and dismiss
+   * animations always run at the display's refresh rate.
+   *
+   * @param fps The requested frame rate, or 0 to pulse at the display's refresh rate (default)
+   */
+  public TapTarget pulseFrameRate(float fps) {
+    if (fps < 0) throw new IllegalArgumentException("Given negative frame rate");
+    this.pulseFrameRate = fps;
+    return this;
+  }
+
+  /** Specify the timing of this target's animations, see {@link TapTargetTiming} **/
+  public TapTarget timing(TapTargetTiming timing) {
+    if (timing == null) throw new IllegalArgumentException("Cannot use a null timing");
+    this.timing = timing;
+    return this;
+  }
+
+  /**
+   * Specify whether touches on the target should be forwarded to the targeted view, so that it
+   * receives the same gesture that dismisses the tap target. The listener is still notified via
+   * {@link TapTargetView.Listener#onTargetClick(TapTargetView)}.
+   * <p>
+   * Note: Only applies to targets created for a view, such as via {@link #forView}
+   */
+  public TapTarget passThroughTouches(boolean passThrough) {
+    this.passThroughTouches = passThrough;
+    return this;
+  }
+
+  /**
+   * Specify a shared theme for this target. If set, the theme's colors, text sizes and typefaces
+   * are used instead of the ones specified on this target.
+   */
+  public TapTarget theme(TapTargetTheme theme) {
+    if (theme == null) throw new IllegalArgumentException("Cannot use a null theme");
+    this.theme = theme;
+    return this;
+  }
+
   /** Specify whether the target should be transparent **/
   public TapTarget transparentTarget(boolean transparent) {
     this.transparentTarget = transparent;
@@ -354,6 +448,85 @@ public class TapTarget {
     return this;
   }
 
+  /**
+   * Specify whether the title and description text should shrink to fit the space above or
+   * below the target, instead of growing the outer circle past the screen
+   */
+  public TapTarget autoFitText(boolean autoFit) {
+    this.autoFitText = autoFit;
+    return this;
+  }
+
+  /** Specify the smallest size in SP the title may shrink to when auto-fitting text **/
+  public TapTarget autoFitMinTextSize(int sp) {
+    if (sp <= 0) throw new IllegalArgumentException("Given non-positive text size");
+    this.autoFitMinTextSize = sp;
+    return this;
+  }
+
+  /** Specify the maximum number of lines of the title, longer titles are ellipsized **/
+  public TapTarget titleMaxLines(int maxLines) {
+    if (maxLines < 1) throw new IllegalArgumentException("Given non-positive max lines");
+    this.titleMaxLines = maxLines;
+    return this;
+  }
+
+  /** Specify the maximum number of lines of the description, longer descriptions are ellipsized **/
+  public TapTarget descriptionMaxLines(int maxLines) {
+    if (maxLines < 1) throw new IllegalArgumentException("Given non-positive max lines");
+    this.descriptionMaxLines = maxLines;
+    return this;
+  }
+
+  /** Specify where text exceeding its max lines is ellipsized, {@code null} simply cuts it off **/
+  public TapTarget ellipsize(@Nullable TextUtils.TruncateAt where) {
+    if (where == TextUtils.TruncateAt.MARQUEE) {
+      throw new IllegalArgumentException("Marquee is not supported");
+    }
+    this.ellipsize = where;
+    return this;
+  }
+
+  /**
+   * Specify the line break strategy of the title and description, either
+   * {@link Layout#BREAK_STRATEGY_SIMPLE} or {@link Layout#BREAK_STRATEGY_BALANCED}
+   * <p>
+   * Note: Only applies to API 23+
+   */
+  public TapTarget breakStrategy(int breakStrategy) {
+    if (breakStrategy != Layout.BREAK_STRATEGY_SIMPLE
+        && breakStrategy != Layout.BREAK_STRATEGY_BALANCED) {
+      throw new IllegalArgumentException("Given an invalid break strategy: " + breakStrategy);
+    }
+    this.breakStrategy = breakStrategy;
+    return this;
+  }
+
+  /**
+   * Specify the hyphenation frequency of the title and description, one of
+   * {@link Layout#HYPHENATION_FREQUENCY_NONE}, {@link Layout#HYPHENATION_FREQUENCY_NORMAL} or
+   * {@link Layout#HYPHENATION_FREQUENCY_FULL}
+   * <p>
+   * Note: Only applies to API 23+
+   */
+  public TapTarget hyphenationFrequency(int frequency) {
+    if (frequency != Layout.HYPHENATION_FREQUENCY_NONE
+        && frequency != Layout.HYPHENATION_FREQUENCY_NORMAL
+        && frequency != Layout.HYPHENATION_FREQUENCY_FULL) {
+      throw new IllegalArgumentException("Given an invalid hyphenation frequency: " + frequency);
+    }
+    this.hyphenationFrequency = frequency;
+    return this;
+  }
+
+  /** Specify the line spacing of the title and description, as in {@link android.widget.TextView#setLineSpacing(float, float)} **/
+  public TapTarget lineSpacing(float extra, float multiplier) {
+    if (multiplier <= 0) throw new IllegalArgumentException("Given non-positive multiplier");
+    this.lineSpacingExtra = extra;
+    this.lineSpacingMultiplier = multiplier;
+    return this;
+  }
+
   /** Specify the alpha value [0.0, 1.0] of the description text **/
   public TapTarget descriptionTextAlpha(float descriptionTextAlpha) {
     if (descriptionTextAlpha < 0 || descriptionTextAlpha > 1f) {
@@ -427,6 +600,7 @@ public class TapTarget {
   public TapTarget icon(Drawable icon, boolean hasSetBounds) {
     if (icon == null) throw new IllegalArgumentException("Cannot use null drawable");
     this.icon = icon;
+    this.iconSource = null;
 
     if (!hasSetBounds) {
       this.icon.setBounds(new Rect(0, 0, this.icon.getIntrinsicWidth(), this.icon.getIntrinsicHeight()));
@@ -435,6 +609,39 @@ public class TapTarget {
     return this;
   }
 
+  /**
+   * Specify a drawable resource for the icon, which is decoded on a background thread. The target
+   * is shown right away and its icon fades in once it is ready. Icons larger than the target
+   * circle are scaled down to fit.
+   */
+  public TapTarget icon(@DrawableRes int icon) {
+    return icon(IconSource.of(icon));
+  }
+
+  /**
+   * Specify an image to load as the icon, which is decoded on a background thread
+   * @see #icon(int)
+   */
+  public TapTarget icon(Uri icon) {
+    if (icon == null) throw new IllegalArgumentException("Cannot use null uri");
+    return icon(IconSource.of(icon));
+  }
+
+  /**
+   * Specify a supplier of the icon, which is called on a background thread
+   * @see #icon(int)
+   */
+  public TapTarget icon(Callable<Drawable> icon) {
+    if (icon == null) throw new IllegalArgumentException("Cannot use null supplier");
+    return icon(IconSource.of(icon));
+  }
+
+  private TapTarget icon(IconSource source) {
+    this.icon = null;
+    this.iconSource = source;
+    return this;
+  }
+
   /** Specify a unique identifier for this target. **/
   public TapTarget id(int id) {
     this.id = id;
@@ -473,6 +680,32 @@ public class TapTarget {
     return bounds;
   }
 
+  /**
+   * Returns whether this target can currently be shown, e.g. whether its view is visible and at
+   * least partially on screen. Attached views that haven't been laid out yet are considered
+   * reachable, detached ones are not unless their activity's window is about to be attached.
+   * This is a cheap check that doesn't wait for the target to be ready.
+   */
+  boolean isReachable() {
+    return true;
+  }
+
+  /** Returns the view that should receive touches on this target, if there is one **/
+  @Nullable
+  View touchTarget() {
+    return null;
+  }
+
+  /**
+   * Re-samples the on-screen position of the target and moves {@link #bounds()} accordingly.
+   * Only called when {@link #trackTarget(boolean)} is set.
+   *
+   * @return Whether the bounds moved since the last time they were sampled
+   */
+  boolean refreshBounds() {
+    return false;
+  }
+
   @Nullable
   Integer outerCircleColorInt(Context context) {
     return colorResOrInt(context, outerCircleColor, outerCircleColorRes);
@@ -499,10 +732,20 @@ public class TapTarget {
   }
 
   int titleTextSizePx(Context context) {
+    if (resolvedTitleTextSize >= 0) {
+      return resolvedTitleTextSize;
+    }
     return dimenOrSize(context, titleTextSize, titleTextDimen);
   }
 
+  int autoFitMinTextSizePx(Context context) {
+    return UiUtil.sp(context, autoFitMinTextSize);
+  }
+
   int descriptionTextSizePx(Context context) {
+    if (resolvedDescriptionTextSize >= 0) {
+      return resolvedDescriptionTextSize;
+    }
     return dimenOrSize(context, descriptionTextSize, descriptionTextDimen);
   }
 
@@ -515,6 +758,61 @@ public class TapTarget {
     return value;
   }
 
+  /**
+   * Copies every option of the given target except for its text, bounds and icon drawable, see
+   * {@link TapTargetSpec}
+   */
+  void copyOptionsFrom(TapTarget other) {
+    outerCircleAlpha = other.outerCircleAlpha;
+    targetRadius = other.targetRadius;
+    iconSource = other.iconSource;
+    titleTypeface = other.titleTypeface;
+    descriptionTypeface = other.descriptionTypeface;
+
+    outerCircleColorRes = other.outerCircleColorRes;
+    targetCircleColorRes = other.targetCircleColorRes;
+    dimColorRes = other.dimColorRes;
+    titleTextColorRes = other.titleTextColorRes;
+    descriptionTextColorRes = other.descriptionTextColorRes;
+    outerCircleColor = other.outerCircleColor;
+    targetCircleColor = other.targetCircleColor;
+    dimColor = other.dimColor;
+    titleTextColor = other.titleTextColor;
+    descriptionTextColor = other.descriptionTextColor;
+
+    titleTextDimen = other.titleTextDimen;
+    descriptionTextDimen = other.descriptionTextDimen;
+    titleTextSize = other.titleTextSize;
+    descriptionTextSize = other.descriptionTextSize;
+    resolvedTitleTextSize = other.resolvedTitleTextSize;
+    resolvedDescriptionTextSize = other.resolvedDescriptionTextSize;
+    titleMaxLines = other.titleMaxLines;
+    descriptionMaxLines = other.descriptionMaxLines;
+    ellipsize = other.ellipsize;
+    breakStrategy = other.breakStrategy;
+    hyphenationFrequency = other.hyphenationFrequency;
+    lineSpacingMultiplier = other.lineSpacingMultiplier;
+    lineSpacingExtra = other.lineSpacingExtra;
+    autoFitText = other.autoFitText;
+    autoFitMinTextSize = other.autoFitMinTextSize;
+    passThroughTouches = other.passThroughTouches;
+    id = other.id;
+
+    drawShadow = other.drawShadow;
+    cancelable = other.cancelable;
+    tintTarget = other.tintTarget;
+    transparentTarget = other.transparentTarget;
+    descriptionTextAlpha = other.descriptionTextAlpha;
+    drawBehindStatusBar = other.drawBehindStatusBar;
+    drawBehindNavigationBar = other.drawBehindNavigationBar;
+    forceCenteredTarget = other.forceCenteredTarget;
+    trackTarget = other.trackTarget;
+    renderThreadAnimations = other.renderThreadAnimations;
+    pulseFrameRate = other.pulseFrameRate;
+    timing = other.timing;
+    theme = other.theme;
+  }
+
   private int dimenOrSize(Context context, int size, @DimenRes int dimen) {
     if (dimen != -1) {
       return context.getResources().getDimensionPixelSize(dimen);
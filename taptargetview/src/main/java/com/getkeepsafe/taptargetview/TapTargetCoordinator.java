@@ -0,0 +1,424 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Dialog;
+import android.content.Context;
+import android.os.Bundle;
+import android.view.Window;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Coordinates tap targets and sequences shown by independent parts of an app.
+ * <p>
+ * Requests are queued by priority and shown so that there is at most one overlay per window at
+ * a time. Requests for a target id that is already queued or showing are dropped. Targets without
+ * an id are never considered duplicates.
+ * <p>
+ * Requests of an activity, including those of its dialogs and sequences, are dropped once the
+ * activity is destroyed, e.g. on a configuration change.
+ */
+@UiThread
+public class TapTargetCoordinator {
+  public static final int PRIORITY_LOW = -1;
+  public static final int PRIORITY_DEFAULT = 0;
+  public static final int PRIORITY_HIGH = 1;
+
+  @Nullable
+  private static TapTargetCoordinator instance;
+
+  private final PriorityQueue<Request> pending = new PriorityQueue<>();
+  private final Map<Window, Request> showing = new HashMap<>();
+  private final Set<Integer> ids = new HashSet<>();
+  private long requestCount;
+  @Nullable
+  private Application application;
+  private final Application.ActivityLifecycleCallbacks hostCallbacks =
+      new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+          onHostDestroyed(activity);
+        }
+      };
+
+  /** Returns the coordinator of this process **/
+  public static TapTargetCoordinator getInstance() {
+    if (instance == null) {
+      instance = new TapTargetCoordinator();
+    }
+    return instance;
+  }
+
+  TapTargetCoordinator() {
+  }
+
+  /** @see #show(Activity, TapTarget, TapTargetView.Listener, int) **/
+  public boolean show(Activity activity, TapTarget target, @Nullable TapTargetView.Listener listener) {
+    return show(activity, target, listener, PRIORITY_DEFAULT);
+  }
+
+  /**
+   * Shows the given target in the activity's window as soon as no other coordinated overlay is
+   * showing in it
+   *
+   * @return Whether the target was queued, this is false if it is a duplicate
+   */
+  public boolean show(Activity activity, TapTarget target,
+                      @Nullable TapTargetView.Listener listener, int priority) {
+    if (activity == null) throw new IllegalArgumentException("Activity is null");
+    if (target == null) throw new IllegalArgumentException("Target cannot be null");
+    return enqueue(new Request(priority, requestCount++, activity, null, target, listener, null));
+  }
+
+  /** @see #show(Dialog, TapTarget, TapTargetView.Listener, int) **/
+  public boolean show(Dialog dialog, TapTarget target, @Nullable TapTargetView.Listener listener) {
+    return show(dialog, target, listener, PRIORITY_DEFAULT);
+  }
+
+  /**
+   * Shows the given target in the dialog's window as soon as no other coordinated overlay is
+   * showing in it
+   *
+   * @return Whether the target was queued, this is false if it is a duplicate
+   */
+  public boolean show(Dialog dialog, TapTarget target,
+                      @Nullable TapTargetView.Listener listener, int priority) {
+    if (dialog == null) throw new IllegalArgumentException("Dialog is null");
+    if (target == null) throw new IllegalArgumentException("Target cannot be null");
+    return enqueue(new Request(priority, requestCount++, null, dialog, target, listener, null));
+  }
+
+  /** @see #start(TapTargetSequence, int) **/
+  public boolean start(TapTargetSequence sequence) {
+    return start(sequence, PRIORITY_DEFAULT);
+  }
+
+  /**
+   * Starts the given sequence as soon as no other coordinated overlay is showing in its window.
+   * The window is considered busy until the sequence finishes, is canceled or released. A sequence
+   * that has already been started elsewhere isn't started again, its window is just considered
+   * busy until it is done.
+   *
+   * @return Whether the sequence was queued, this is false if any of its targets is a duplicate
+   */
+  public boolean start(TapTargetSequence sequence, int priority) {
+    if (sequence == null) throw new IllegalArgumentException("Sequence is null");
+    return enqueue(new Request(priority, requestCount++, null, null, null, null, sequence));
+  }
+
+  /** Returns the number of requests waiting for their window to become free **/
+  public int queueDepth() {
+    return pending.size();
+  }
+
+  /** Removes all pending requests, overlays that are already showing are left alone **/
+  public void clear() {
+    for (final Request request : pending) {
+      ids.removeAll(request.ids);
+    }
+    pending.clear();
+  }
+
+  private boolean enqueue(Request request) {
+    // Sequences may have been handed more targets since they were queued
+    for (final Request queued : pending) {
+      trackAddedIds(queued);
+    }
+    for (final Request queued : showing.values()) {
+      trackAddedIds(queued);
+    }
+
+    for (final Integer id : request.ids) {
+      if (ids.contains(id)) {
+        return false;
+      }
+    }
+
+    ids.addAll(request.ids);
+    pending.add(request);
+    watch(request.host());
+    drain();
+    return true;
+  }
+
+  private void trackAddedIds(Request request) {
+    if (request.sequence == null) {
+      return;
+    }
+
+    for (final Integer id : request.sequence.targetIds()) {
+      if (id != -1 && !request.ids.contains(id)) {
+        request.ids.add(id);
+        ids.add(id);
+      }
+    }
+  }
+
+  private void watch(@Nullable Activity host) {
+    if (application == null && host != null) {
+      application = host.getApplication();
+      application.registerActivityLifecycleCallbacks(hostCallbacks);
+    }
+  }
+
+  /** Drops every request of the given activity, so that neither it nor its windows leak **/
+  void onHostDestroyed(Activity activity) {
+    final Iterator<Request> pendingRequests = pending.iterator();
+    while (pendingRequests.hasNext()) {
+      final Request request = pendingRequests.next();
+      if (request.host() == activity) {
+        pendingRequests.remove();
+        ids.removeAll(request.ids);
+      }
+    }
+
+    final Iterator<Request> showingRequests = showing.values().iterator();
+    while (showingRequests.hasNext()) {
+      final Request request = showingRequests.next();
+      if (request.host() == activity) {
+        showingRequests.remove();
+        ids.removeAll(request.ids);
+        if (request.sequence != null) {
+          request.sequence.finishCallback = null;
+        }
+      }
+    }
+
+    drain();
+  }
+
+  void drain() {
+    // Hosts can finish without their overlay telling us, so their windows are freed up here
+    final Iterator<Request> showingRequests = showing.values().iterator();
+    while (showingRequests.hasNext()) {
+      final Request request = showingRequests.next();
+      if (request.isHostFinishing()) {
+        showingRequests.remove();
+        ids.removeAll(request.ids);
+      }
+    }
+
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    // Requests are only shown once the queue is consistent again, as showing one may finish it
+    // right away and drain the queue re-entrantly
+    final List<Request> waiting = new ArrayList<>(pending.size());
+    final List<Request> ready = new ArrayList<>();
+    Request request;
+    while ((request = pending.poll()) != null) {
+      final Window window = request.window();
+      if (window == null || request.isHostFinishing() || request.isEmpty()
+          || !request.isReachable()) {
+        ids.removeAll(request.ids);
+      } else if (showing.containsKey(window)) {
+        waiting.add(request);
+      } else {
+        showing.put(window, request);
+        ready.add(request);
+      }
+    }
+    pending.addAll(waiting);
+
+    for (final Request next : ready) {
+      final Window window = next.window();
+      if (window != null && showing.get(window) == next) {
+        show(window, next);
+      }
+    }
+  }
+
+  private void show(final Window window, final Request request) {
+    final Runnable finished = new Runnable() {
+      @Override
+      public void run() {
+        if (showing.get(window) == request) {
+          showing.remove(window);
+          ids.removeAll(request.ids);
+          drain();
+        }
+      }
+    };
+
+    if (request.sequence != null) {
+      request.sequence.finishCallback = finished;
+      if (!request.sequence.isActive()) {
+        request.sequence.start();
+      }
+      return;
+    }
+
+    final TapTargetView.Listener listener = new CoordinatedListener(request.listener, finished);
+    if (request.activity != null) {
+      TapTargetView.showFor(request.activity, request.target, listener);
+    } else {
+      TapTargetView.showFor(request.dialog, request.target, listener);
+    }
+  }
+
+  private static class Request implements Comparable<Request> {
+    final int priority;
+    final long order;
+    @Nullable final Activity activity;
+    @Nullable final Dialog dialog;
+    @Nullable final TapTarget target;
+    @Nullable final TapTargetView.Listener listener;
+    @Nullable final TapTargetSequence sequence;
+    final List<Integer> ids;
+
+    Request(int priority, long order, @Nullable Activity activity, @Nullable Dialog dialog,
+            @Nullable TapTarget target, @Nullable TapTargetView.Listener listener,
+            @Nullable TapTargetSequence sequence) {
+      this.priority = priority;
+      this.order = order;
+      this.activity = activity;
+      this.dialog = dialog;
+      this.target = target;
+      this.listener = listener;
+      this.sequence = sequence;
+
+      final List<Integer> targetIds = sequence != null
+          ? sequence.targetIds() : Collections.singletonList(target.id());
+      this.ids = new ArrayList<>(targetIds.size());
+      for (final Integer id : targetIds) {
+        if (id != -1) {
+          this.ids.add(id);
+        }
+      }
+    }
+
+    @Nullable
+    Window window() {
+      if (sequence != null) {
+        return sequence.window();
+      }
+      return activity != null ? activity.getWindow() : dialog.getWindow();
+    }
+
+    boolean isHostFinishing() {
+      if (sequence != null) {
+        return sequence.isHostFinishing();
+      }
+      return activity != null ? UiUtil.isFinishing(activity) : !dialog.isShowing();
+    }
+
+    @Nullable
+    Activity host() {
+      if (activity != null) {
+        return activity;
+      }
+      final Context context = sequence != null ? sequence.context() : dialog.getContext();
+      return UiUtil.activityOf(context);
+    }
+
+    /** Single targets are checked up front, sequences skip their unreachable targets themselves **/
+    boolean isReachable() {
+      return target == null || target.isReachable();
+    }
+
+    boolean isEmpty() {
+      return sequence != null && !sequence.isActive() && sequence.targetIds().isEmpty();
+    }
+
+    @Override
+    public int compareTo(Request other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return order < other.order ? -1 : (order == other.order ? 0 : 1);
+    }
+  }
+
+  /** Forwards to the caller's listener and tells the coordinator once the target is dismissed **/
+  private static class CoordinatedListener extends TapTargetView.Listener {
+    private final TapTargetView.Listener delegate;
+    private final Runnable finished;
+
+    CoordinatedListener(@Nullable TapTargetView.Listener delegate, Runnable finished) {
+      this.delegate = delegate != null ? delegate : new TapTargetView.Listener();
+      this.finished = finished;
+    }
+
+    @Override
+    public void onTargetClick(TapTargetView view) {
+      delegate.onTargetClick(view);
+    }
+
+    @Override
+    public void onTargetLongClick(TapTargetView view) {
+      delegate.onTargetLongClick(view);
+    }
+
+    @Override
+    public void onTargetCancel(TapTargetView view) {
+      delegate.onTargetCancel(view);
+    }
+
+    @Override
+    public void onOuterCircleClick(TapTargetView view) {
+      delegate.onOuterCircleClick(view);
+    }
+
+    @Override
+    public void onTargetDismissed(TapTargetView view, boolean userInitiated) {
+      delegate.onTargetDismissed(view, userInitiated);
+      finished.run();
+    }
+
+    @Override
+    public void onTargetShowTimings(TapTargetView view, long firstFrameMillis, long expandedMillis) {
+      delegate.onTargetShowTimings(view, firstFrameMillis, expandedMillis);
+    }
+  }
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.graphics.Color;
+import android.os.Build;
+import android.view.View;
+import android.view.Window;
+import androidx.annotation.Nullable;
+import androidx.annotation.XmlRes;
+import androidx.appcompat.widget.Toolbar;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses tap target sequences from XML resources, e.g. {@code res/xml/tour.xml}:
+ * <pre>{@code
+ * <tap-target-sequence>
+ *   <view view="@id/fab" title="@string/tour_fab" description="@string/tour_fab_description"
+ *       outerCircleColor="@color/accent" drawShadow="true" />
+ *   <toolbar-item toolbar="@id/toolbar" item="@id/search" title="@string/tour_search" />
+ *   <toolbar-navigation toolbar="@id/toolbar" title="@string/tour_navigation" />
+ *   <toolbar-overflow toolbar="@id/toolbar" title="@string/tour_overflow" />
+ * </tap-target-sequence>
+ * }</pre>
+ * Besides the attributes above, every target accepts {@code id}, {@code icon},
+ * {@code targetCircleColor}, {@code dimColor}, {@code textColor}, {@code titleTextColor},
+ * {@code descriptionTextColor}, {@code titleTextSize}, {@code descriptionTextSize},
+ * {@code outerCircleAlpha}, {@code targetRadius}, {@code cancelable}, {@code tintTarget} and
+ * {@code transparentTarget}. Text and colors may be given as resources or literals.
+ * <p>
+ * The {@code id} may be an id resource such as {@code @id/step} or an integer. Text sizes may be a
+ * dimension resource, or a literal in sp such as {@code 20sp} or {@code 20}. The target radius
+ * is a literal in dp such as {@code 44dp} or {@code 44}. Other units are rejected.
+ * <p>
+ * Only the attribute values are read while parsing. Views, strings and colors are looked up once
+ * the sequence reaches the target.
+ */
+class TapTargetInflater {
+  static final String TAG_SEQUENCE = "tap-target-sequence";
+  static final String TAG_VIEW = "view";
+  static final String TAG_TOOLBAR_ITEM = "toolbar-item";
+  static final String TAG_TOOLBAR_NAVIGATION = "toolbar-navigation";
+  static final String TAG_TOOLBAR_OVERFLOW = "toolbar-overflow";
+
+  TapTargetInflater() {
+  }
+
+  static List<TapTargetSequence.Step> inflate(Resources resources, @XmlRes int xmlRes) {
+    final List<TapTargetSequence.Step> steps = new ArrayList<>();
+    final XmlResourceParser parser = resources.getXml(xmlRes);
+    try {
+      int event;
+      while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+        if (event != XmlPullParser.START_TAG || TAG_SEQUENCE.equals(parser.getName())) {
+          continue;
+        }
+        steps.add(new XmlStep(parser));
+      }
+    } catch (XmlPullParserException | IOException e) {
+      throw new IllegalArgumentException("Could not inflate tap target sequence", e);
+    } finally {
+      parser.close();
+    }
+    return steps;
+  }
+
+  /** The raw attributes of a single target, resolved into a {@link TapTarget} once reached **/
+  static class XmlStep extends TapTargetSequence.Step {
+    final String tag;
+    final int id;
+    final int viewId;
+    final int itemId;
+    final int titleRes;
+    @Nullable final String title;
+    final int descriptionRes;
+    @Nullable final String description;
+    final int iconRes;
+    final int outerCircleColorRes;
+    @Nullable final Integer outerCircleColor;
+    final int targetCircleColorRes;
+    @Nullable final Integer targetCircleColor;
+    final int dimColorRes;
+    @Nullable final Integer dimColor;
+    final int textColorRes;
+    @Nullable final Integer textColor;
+    final int titleTextColorRes;
+    @Nullable final Integer titleTextColor;
+    final int descriptionTextColorRes;
+    @Nullable final Integer descriptionTextColor;
+    final int titleTextSizeRes;
+    final int titleTextSize;
+    final int descriptionTextSizeRes;
+    final int descriptionTextSize;
+    final float outerCircleAlpha;
+    final int targetRadius;
+    final boolean drawShadow;
+    final boolean cancelable;
+    final boolean tintTarget;
+    final boolean transparentTarget;
+
+    XmlStep(XmlResourceParser parser) {
+      tag = parser.getName();
+      if (!TAG_VIEW.equals(tag) && !TAG_TOOLBAR_ITEM.equals(tag)
+          && !TAG_TOOLBAR_NAVIGATION.equals(tag) && !TAG_TOOLBAR_OVERFLOW.equals(tag)) {
+        throw new IllegalArgumentException("Unknown tap target tag <" + tag + "> at "
+            + parser.getPositionDescription());
+      }
+
+      final int idRes = parser.getAttributeResourceValue(null, "id", 0);
+      id = idRes != 0 ? idRes : parser.getAttributeIntValue(null, "id", -1);
+      viewId = parser.getAttributeResourceValue(null, TAG_VIEW.equals(tag) ? "view" : "toolbar", 0);
+      itemId = parser.getAttributeResourceValue(null, "item", 0);
+      if (viewId == 0 || (TAG_TOOLBAR_ITEM.equals(tag) && itemId == 0)) {
+        throw new IllegalArgumentException("Missing view id for <" + tag + "> at "
+            + parser.getPositionDescription());
+      }
+
+      titleRes = parser.getAttributeResourceValue(null, "title", 0);
+      title = titleRes == 0 ? parser.getAttributeValue(null, "title") : null;
+      if (titleRes == 0 && title == null) {
+        throw new IllegalArgumentException("Missing title for <" + tag + "> at "
+            + parser.getPositionDescription());
+      }
+      descriptionRes = parser.getAttributeResourceValue(null, "description", 0);
+      description = descriptionRes == 0 ? parser.getAttributeValue(null, "description") : null;
+      iconRes = parser.getAttributeResourceValue(null, "icon", 0);
+
+      outerCircleColorRes = parser.getAttributeResourceValue(null, "outerCircleColor", 0);
+      outerCircleColor = colorLiteral(parser, "outerCircleColor", outerCircleColorRes);
+      targetCircleColorRes = parser.getAttributeResourceValue(null, "targetCircleColor", 0);
+      targetCircleColor = colorLiteral(parser, "targetCircleColor", targetCircleColorRes);
+      dimColorRes = parser.getAttributeResourceValue(null, "dimColor", 0);
+      dimColor = colorLiteral(parser, "dimColor", dimColorRes);
+      textColorRes = parser.getAttributeResourceValue(null, "textColor", 0);
+      textColor = colorLiteral(parser, "textColor", textColorRes);
+      titleTextColorRes = parser.getAttributeResourceValue(null, "titleTextColor", 0);
+      titleTextColor = colorLiteral(parser, "titleTextColor", titleTextColorRes);
+      descriptionTextColorRes = parser.getAttributeResourceValue(null, "descriptionTextColor", 0);
+      descriptionTextColor = colorLiteral(parser, "descriptionTextColor", descriptionTextColorRes);
+
+      titleTextSizeRes = parser.getAttributeResourceValue(null, "titleTextSize", 0);
+      titleTextSize = titleTextSizeRes == 0 ? sizeLiteral(parser, "titleTextSize", "sp") : -1;
+      descriptionTextSizeRes = parser.getAttributeResourceValue(null, "descriptionTextSize", 0);
+      descriptionTextSize = descriptionTextSizeRes == 0
+          ? sizeLiteral(parser, "descriptionTextSize", "sp") : -1;
+      outerCircleAlpha = parser.getAttributeFloatValue(null, "outerCircleAlpha", -1);
+      targetRadius = sizeLiteral(parser, "targetRadius", "dp");
+      drawShadow = parser.getAttributeBooleanValue(null, "drawShadow", false);
+      cancelable = parser.getAttributeBooleanValue(null, "cancelable", true);
+      tintTarget = parser.getAttributeBooleanValue(null, "tintTarget", true);
+      transparentTarget = parser.getAttributeBooleanValue(null, "transparentTarget", false);
+    }
+
+    @Override
+    int id() {
+      return id;
+    }
+
+    @Override
+    TapTarget resolve(Window window, Context context) {
+      final CharSequence resolvedTitle = titleRes != 0 ? context.getText(titleRes) : title;
+      final CharSequence resolvedDescription = descriptionRes != 0
+          ? context.getText(descriptionRes) : description;
+
+      final TapTarget target = createTarget(window, resolvedTitle, resolvedDescription);
+      target.id(id)
+          .drawShadow(drawShadow)
+          .cancelable(cancelable)
+          .tintTarget(tintTarget)
+          .transparentTarget(transparentTarget);
+      if (iconRes != 0) target.icon(iconRes);
+      if (outerCircleColorRes != 0) target.outerCircleColor(outerCircleColorRes);
+      if (outerCircleColor != null) target.outerCircleColorInt(outerCircleColor);
+      if (targetCircleColorRes != 0) target.targetCircleColor(targetCircleColorRes);
+      if (targetCircleColor != null) target.targetCircleColorInt(targetCircleColor);
+      if (dimColorRes != 0) target.dimColor(dimColorRes);
+      if (dimColor != null) target.dimColorInt(dimColor);
+      if (textColorRes != 0) target.textColor(textColorRes);
+      if (textColor != null) target.textColorInt(textColor);
+      if (titleTextColorRes != 0) target.titleTextColor(titleTextColorRes);
+      if (titleTextColor != null) target.titleTextColorInt(titleTextColor);
+      if (descriptionTextColorRes != 0) target.descriptionTextColor(descriptionTextColorRes);
+      if (descriptionTextColor != null) target.descriptionTextColorInt(descriptionTextColor);
+      if (titleTextSizeRes != 0) target.titleTextDimen(titleTextSizeRes);
+      if (titleTextSize >= 0) target.titleTextSize(titleTextSize);
+      if (descriptionTextSizeRes != 0) target.descriptionTextDimen(descriptionTextSizeRes);
+      if (descriptionTextSize >= 0) target.descriptionTextSize(descriptionTextSize);
+      if (outerCircleAlpha >= 0) target.outerCircleAlpha(outerCircleAlpha);
+      if (targetRadius > 0) target.targetRadius(targetRadius);
+      return target;
+    }
+
+    /** Views that can't be found yield a target that is skipped as unreachable **/
+    private TapTarget createTarget(Window window, CharSequence title,
+                                   @Nullable CharSequence description) {
+      final View view = window != null ? window.findViewById(viewId) : null;
+      if (TAG_VIEW.equals(tag) || view == null) {
+        return new ViewTapTarget(view, title, description);
+      }
+
+      final boolean navigation = TAG_TOOLBAR_NAVIGATION.equals(tag);
+      if (view instanceof Toolbar) {
+        final Toolbar toolbar = (Toolbar) view;
+        return TAG_TOOLBAR_ITEM.equals(tag)
+            ? new ToolbarTapTarget(toolbar, itemId, title, description)
+            : new ToolbarTapTarget(toolbar, navigation, title, description);
+      } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+          && view instanceof android.widget.Toolbar) {
+        final android.widget.Toolbar toolbar = (android.widget.Toolbar) view;
+        return TAG_TOOLBAR_ITEM.equals(tag)
+            ? new ToolbarTapTarget(toolbar, itemId, title, description)
+            : new ToolbarTapTarget(toolbar, navigation, title, description);
+      }
+
+      throw new IllegalStateException("View for <" + tag + "> is not a Toolbar");
+    }
+
+    /**
+     * Returns the given size attribute in the given unit, or -1 if it is missing. Plain numbers
+     * are taken to be in that unit already.
+     */
+    private static int sizeLiteral(XmlResourceParser parser, String attribute, String unit) {
+      String value = parser.getAttributeValue(null, attribute);
+      if (value == null) {
+        return -1;
+      }
+
+      value = value.trim();
+      if (value.endsWith(unit)) {
+        value = value.substring(0, value.length() - unit.length());
+      } else if ("dp".equals(unit) && value.endsWith("dip")) {
+        value = value.substring(0, value.length() - 3);
+      }
+
+      try {
+        return Math.round(Float.parseFloat(value));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Expected " + attribute + " in " + unit + " at "
+            + parser.getPositionDescription(), e);
+      }
+    }
+
+    @Nullable
+    private static Integer colorLiteral(XmlResourceParser parser, String attribute, int resource) {
+      if (resource != 0) {
+        return null;
+      }
+
+      final String value = parser.getAttributeValue(null, attribute);
+      return value != null ? Color.parseColor(value) : null;
+    }
+  }
+}
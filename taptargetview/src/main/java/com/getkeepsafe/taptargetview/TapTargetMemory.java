@@ -0,0 +1,167 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Frees the library's caches and bitmaps when the system runs low on memory.
+ * <p>
+ * The instance registers itself for {@link ComponentCallbacks2} with the application as soon as
+ * the first {@link TapTargetView} is created. Depending on the trim level, it drops cached text
+ * measurements, pooled views, and the bitmaps, layers and render nodes of overlays that aren't
+ * visible. Everything that is freed is re-created when needed again.
+ * <p>
+ * Trim levels are mapped as follows:
+ * <ul>
+ *   <li>{@link #TRIM_MEMORY_UI_HIDDEN} and {@link #TRIM_MEMORY_BACKGROUND} or higher: no overlay
+ *   is visible anymore, so all of them, the pool and the text measurements are trimmed. These are
+ *   the only levels delivered on API 34 and above.</li>
+ *   <li>{@link #TRIM_MEMORY_RUNNING_LOW}: the app is in the foreground, overlays that aren't
+ *   visible, the pool and the text measurements are trimmed. Only delivered below API 34.</li>
+ *   <li>{@link #TRIM_MEMORY_RUNNING_CRITICAL} and {@code onLowMemory}: as above, and visible
+ *   overlays also give up their outer circle render node and draw the circle directly instead.
+ *   Only delivered below API 34.</li>
+ *   <li>{@link #TRIM_MEMORY_RUNNING_MODERATE}: ignored.</li>
+ * </ul>
+ */
+@UiThread
+public class TapTargetMemory implements ComponentCallbacks2 {
+  @Nullable
+  private static TapTargetMemory instance;
+
+  private final Map<TapTargetView, Boolean> views = new WeakHashMap<>();
+  private final Map<TapTargetViewPool, Boolean> pools = new WeakHashMap<>();
+  private boolean registered;
+  @Nullable
+  private Listener listener;
+
+  /** Reports what was freed in response to a trim, e.g. to correlate it with OOM telemetry **/
+  public interface Listener {
+    /**
+     * Called after the library has responded to a trim or low memory callback
+     *
+     * @param level The trim level, {@link #TRIM_MEMORY_COMPLETE} for {@code onLowMemory}
+     * @param textMeasurements The number of cached text measurements that were dropped
+     * @param pooledViews The number of pooled views that were dropped
+     * @param downgradedViews The number of visible views that gave up their render node
+     * @param bitmapBytes The size of the tinted icon and view snapshot bitmaps that were dropped
+     */
+    void onMemoryTrimmed(int level, int textMeasurements, int pooledViews, int downgradedViews,
+                         long bitmapBytes);
+  }
+
+  /** Returns the instance of this process **/
+  public static TapTargetMemory getInstance() {
+    if (instance == null) {
+      instance = new TapTargetMemory();
+    }
+    return instance;
+  }
+
+  TapTargetMemory() {
+  }
+
+  /** Specify the listener that is told what was freed on every trim **/
+  public TapTargetMemory listener(@Nullable Listener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  void track(Context context, TapTargetView view) {
+    if (!registered) {
+      context.getApplicationContext().registerComponentCallbacks(this);
+      registered = true;
+    }
+    views.put(view, Boolean.TRUE);
+  }
+
+  void track(TapTargetViewPool pool) {
+    pools.put(pool, Boolean.TRUE);
+  }
+
+  @SuppressLint("InlinedApi")
+  @Override
+  public void onTrimMemory(int level) {
+    if (level >= TRIM_MEMORY_UI_HIDDEN) {
+      // Nothing is visible anymore, even if the hosts haven't been stopped yet
+      trim(level, false, false);
+    } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+      trim(level, true, level >= TRIM_MEMORY_RUNNING_CRITICAL);
+    }
+    // Moderate pressure isn't worth throwing away work that we may need again shortly
+  }
+
+  private void trim(int level, boolean uiVisible, boolean downgradeVisible) {
+    final int textMeasurements = TextMeasureCache.size();
+    TextMeasureCache.clear();
+
+    // Trim the views before clearing the pools so that the bitmaps of pooled views are counted
+    long bitmapBytes = 0;
+    int downgradedViews = 0;
+    final List<TapTargetView> trackedViews = new ArrayList<>(views.keySet());
+    final Set<TapTarget> liveTargets =
+        Collections.newSetFromMap(new IdentityHashMap<TapTarget, Boolean>());
+    for (final TapTargetView view : trackedViews) {
+      if (!view.isDismissed()) {
+        liveTargets.add(view.target);
+      }
+    }
+
+    for (final TapTargetView view : trackedViews) {
+      if (uiVisible && view.isVisible() && !view.hostStopped) {
+        if (downgradeVisible && view.downgrade()) {
+          downgradedViews++;
+        }
+      } else {
+        bitmapBytes += view.trimMemory(liveTargets);
+      }
+    }
+
+    int pooledViews = 0;
+    for (final TapTargetViewPool pool : pools.keySet()) {
+      pooledViews += pool.size();
+      pool.clear();
+    }
+
+    if (listener != null) {
+      listener.onMemoryTrimmed(level, textMeasurements, pooledViews, downgradedViews, bitmapBytes);
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    // Unlike the trim levels this says nothing about visibility, so visible views stay drawn
+    trim(TRIM_MEMORY_COMPLETE, true, true);
+  }
+
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {
+  }
+}
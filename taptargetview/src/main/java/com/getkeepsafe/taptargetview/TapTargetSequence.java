@@ -17,14 +17,28 @@ package com.getkeepsafe.taptargetview;
 
 import android.app.Activity;
 import android.app.Dialog;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.Window;
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
+import androidx.annotation.XmlRes;
+import androidx.core.view.ViewCompat;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Displays a sequence of {@link TapTargetView}s.
@@ -32,18 +46,65 @@ import java.util.Queue;
  * Internally, a FIFO queue is held to dictate which {@link TapTarget} will be shown.
  */
 public class TapTargetSequence {
-  private final @Nullable Activity activity;
-  private final @Nullable Dialog dialog;
-  private final Queue<TapTarget> targets;
+  private @Nullable Activity activity;
+  private @Nullable Dialog dialog;
+  private final Queue<Step> steps;
   private boolean active;
 
+  // Targets enqueued from any thread, moved into the queue above on the main thread in batches
+  private final ConcurrentLinkedQueue<TapTarget> incoming = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final Runnable drainIncoming = new Runnable() {
+    @Override
+    public void run() {
+      drainScheduled.set(false);
+      TapTarget target;
+      while ((target = incoming.poll()) != null) {
+        if (activity != null || dialog != null) {
+          steps.add(new TargetStep(target));
+        }
+      }
+    }
+  };
+  private int index = -1;
+  private boolean restoreExpanded;
+
+  // Set by TapTargetCoordinator to learn when this sequence no longer shows anything
+  @Nullable
+  Runnable finishCallback;
+
   @Nullable
   private TapTargetView currentView;
 
   Listener listener;
+  @Nullable
+  SkipListener skipListener;
+  @Nullable
+  TapTargetTiming timing;
+  @Nullable
+  TapTargetTheme theme;
   boolean considerOuterCircleCanceled;
   boolean continueOnCancel;
 
+  @Nullable
+  private Lifecycle lifecycle;
+  private final LifecycleEventObserver lifecycleObserver = new LifecycleEventObserver() {
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+      if (event == Lifecycle.Event.ON_STOP && currentView != null) {
+        currentView.onHostStop();
+      } else if (event == Lifecycle.Event.ON_START && currentView != null) {
+        currentView.onHostStart();
+      } else if (event == Lifecycle.Event.ON_DESTROY) {
+        release();
+      }
+    }
+  };
+
+  /** The longest time a target waits for its view to be laid out before it is skipped **/
+  static final long LAYOUT_TIMEOUT_MILLIS = 5000;
+
   public interface Listener {
     /** Called when there are no more tap targets to display */
     void onSequenceFinish();
@@ -65,35 +126,91 @@ public class TapTargetSequence {
     void onSequenceCanceled(TapTarget lastTarget);
   }
 
+  public interface SkipListener {
+    /**
+     * Called when a target is skipped because it can't be shown, e.g. because its view is gone,
+     * detached or not laid out in time, or is hidden, zero-sized or entirely off screen once laid
+     * out
+     * @param skippedTarget The skipped target
+     */
+    void onSequenceSkip(TapTarget skippedTarget);
+  }
+
   public TapTargetSequence(Activity activity) {
     if (activity == null) throw new IllegalArgumentException("Activity is null");
     this.activity = activity;
     this.dialog = null;
-    this.targets = new LinkedList<>();
+    this.steps = new LinkedList<>();
   }
 
   public TapTargetSequence(Dialog dialog) {
     if (dialog == null) throw new IllegalArgumentException("Given null Dialog");
     this.dialog = dialog;
     this.activity = null;
-    this.targets = new LinkedList<>();
+    this.steps = new LinkedList<>();
   }
 
   /** Adds the given targets, in order, to the pending queue of {@link TapTarget}s */
   public TapTargetSequence targets(List<TapTarget> targets) {
-    this.targets.addAll(targets);
+    for (final TapTarget target : targets) {
+      this.steps.add(new TargetStep(target));
+    }
     return this;
   }
 
   /** Adds the given targets, in order, to the pending queue of {@link TapTarget}s */
   public TapTargetSequence targets(TapTarget... targets) {
-    Collections.addAll(this.targets, targets);
+    for (final TapTarget target : targets) {
+      this.steps.add(new TargetStep(target));
+    }
     return this;
   }
 
   /** Adds the given target to the pending queue of {@link TapTarget}s */
   public TapTargetSequence target(TapTarget target) {
-    this.targets.add(target);
+    this.steps.add(new TargetStep(target));
+    return this;
+  }
+
+  /**
+   * Adds the targets described by the given XML resource, in order, to the pending queue. The
+   * resource is parsed right away, but each target is only created once it is reached, see
+   * {@link TapTargetInflater} for the format.
+   */
+  public TapTargetSequence targets(@XmlRes int xmlRes) {
+    final Context context = context();
+    if (context == null) throw new IllegalStateException("Sequence has been released");
+    this.steps.addAll(TapTargetInflater.inflate(context.getResources(), xmlRes));
+    return this;
+  }
+
+  /**
+   * Adds the given target to the pending queue from any thread. Targets enqueued this way are
+   * handed to the main thread in a single batch, and are shown in order after any targets that
+   * are already pending.
+   * <p>
+   * Note: Targets arriving after the sequence finished are only shown if it is started again
+   */
+  @AnyThread
+  public TapTargetSequence enqueue(TapTarget target) {
+    if (target == null) throw new IllegalArgumentException("Given null target");
+    incoming.add(target);
+    if (drainScheduled.compareAndSet(false, true)) {
+      mainHandler.post(drainIncoming);
+    }
+    return this;
+  }
+
+  /** Adds the given targets, in order, to the pending queue from any thread, see {@link #enqueue(TapTarget)} **/
+  @AnyThread
+  public TapTargetSequence enqueue(TapTarget... targets) {
+    for (final TapTarget target : targets) {
+      if (target == null) throw new IllegalArgumentException("Given null target");
+    }
+    Collections.addAll(incoming, targets);
+    if (drainScheduled.compareAndSet(false, true)) {
+      mainHandler.post(drainIncoming);
+    }
     return this;
   }
 
@@ -109,6 +226,52 @@ public class TapTargetSequence {
     return this;
   }
 
+  /**
+   * Specify the timing for every target in this sequence that doesn't specify its own via
+   * {@link TapTarget#timing(TapTargetTiming)}
+   */
+  public TapTargetSequence timing(TapTargetTiming timing) {
+    this.timing = timing;
+    return this;
+  }
+
+  /**
+   * Binds this sequence to the given lifecycle: the current target pauses while the owner is
+   * stopped, and the sequence is torn down without animation once the owner is destroyed.
+   * Binding to an owner that is already destroyed releases the sequence right away.
+   */
+  public TapTargetSequence bindToLifecycle(LifecycleOwner owner) {
+    if (owner == null) throw new IllegalArgumentException("Given null LifecycleOwner");
+    if (lifecycle != null) {
+      lifecycle.removeObserver(lifecycleObserver);
+      lifecycle = null;
+    }
+
+    // A destroyed lifecycle doesn't dispatch any more events, so we wouldn't hear about it
+    if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+      release();
+      return this;
+    }
+    lifecycle = owner.getLifecycle();
+    lifecycle.addObserver(lifecycleObserver);
+    return this;
+  }
+
+  /**
+   * Specify the theme for every target in this sequence that doesn't specify its own via
+   * {@link TapTarget#theme(TapTargetTheme)}
+   */
+  public TapTargetSequence theme(TapTargetTheme theme) {
+    this.theme = theme;
+    return this;
+  }
+
+  /** Specify the listener notified about targets that are skipped because they can't be shown **/
+  public TapTargetSequence skipListener(SkipListener skipListener) {
+    this.skipListener = skipListener;
+    return this;
+  }
+
   /** Specify the listener for this sequence **/
   public TapTargetSequence listener(Listener listener) {
     this.listener = listener;
@@ -118,7 +281,7 @@ public class TapTargetSequence {
   /** Immediately starts the sequence and displays the first target from the queue **/
   @UiThread
   public void start() {
-    if (targets.isEmpty() || active) {
+    if (steps.isEmpty() || active) {
       return;
     }
 
@@ -126,18 +289,41 @@ public class TapTargetSequence {
     showNext();
   }
 
+  /**
+   * Starts the sequence once the host window has drawn its first frame and the main thread is
+   * idle, or after {@link TapTargetView#IDLE_TIMEOUT_MILLIS} at the latest
+   */
+  @UiThread
+  public void startWhenIdle() {
+    final Window window = window();
+    if (window == null || active) {
+      return;
+    }
+
+    ViewUtil.onIdleAfterFirstDraw(window.getDecorView(), TapTargetView.IDLE_TIMEOUT_MILLIS,
+        new Runnable() {
+          @Override
+          public void run() {
+            if (!isHostFinishing()) {
+              start();
+            }
+          }
+        });
+  }
+
   /** Immediately starts the sequence from the given targetId's position in the queue */
   public void startWith(int targetId) {
     if (active) {
       return;
     }
 
-    while (targets.peek() != null && targets.peek().id() != targetId) {
-      targets.poll();
+    while (steps.peek() != null && steps.peek().id() != targetId) {
+      steps.poll();
+      index++;
     }
 
-    TapTarget peekedTarget = targets.peek();
-    if (peekedTarget == null || peekedTarget.id() != targetId) {
+    Step peekedStep = steps.peek();
+    if (peekedStep == null || peekedStep.id() != targetId) {
       throw new IllegalStateException("Given target " + targetId + " not in sequence");
     }
 
@@ -150,20 +336,84 @@ public class TapTargetSequence {
       return;
     }
 
-    if (index < 0 || index >= targets.size()) {
+    if (index < 0 || index >= steps.size()) {
       throw new IllegalArgumentException("Given invalid index " + index);
     }
 
-    final int expectedSize = targets.size() - index;
-    while (targets.peek() != null && targets.size() != expectedSize) {
-      targets.poll();
+    for (int i = 0; i < index; i++) {
+      steps.poll();
     }
+    this.index += index;
+
+    start();
+  }
 
-    if (targets.size() != expectedSize) {
-      throw new IllegalStateException("Given index " + index + " not in sequence");
+  /**
+   * Returns the state of this sequence, to be saved in
+   * {@link Activity#onSaveInstanceState(android.os.Bundle)} and passed to {@link #restore}
+   */
+  public TapTargetState saveState() {
+    if (!active || currentView == null) {
+      return new TapTargetState(index, -1, TapTargetState.PHASE_IDLE);
     }
 
-    start();
+    final TapTargetState viewState = currentView.saveState();
+    return new TapTargetState(index, viewState.targetId, viewState.phase);
+  }
+
+  /**
+   * Resumes this sequence at the target that was showing when the given state was saved, instead
+   * of starting over. This sequence must hold the same targets as the one the state was saved
+   * from. A target that was already expanded is shown without its expand animation. If the target
+   * at the saved position doesn't have the saved id, the sequence resumes at the target that does.
+   *
+   * @throws IllegalArgumentException If no target of this sequence has the saved id
+   * @return Whether the sequence was resumed, this is false if no target was showing
+   */
+  @UiThread
+  public boolean restore(@Nullable TapTargetState state) {
+    if (active || state == null || !state.isShowing()) {
+      return false;
+    }
+
+    if (state.index < 0 || state.index >= steps.size()) {
+      throw new IllegalArgumentException("Given state at invalid index " + state.index);
+    }
+
+    // Targets without an id can only be matched by their position
+    int restoreIndex = state.index;
+    if (state.targetId != -1 && stepIdAt(restoreIndex) != state.targetId) {
+      restoreIndex = indexOf(state.targetId);
+      if (restoreIndex == -1) {
+        throw new IllegalArgumentException("Given state for target " + state.targetId
+            + " not in sequence");
+      }
+    }
+
+    restoreExpanded = state.isExpanded();
+    startAt(restoreIndex);
+    return true;
+  }
+
+  private int stepIdAt(int position) {
+    int i = 0;
+    for (final Step step : steps) {
+      if (i++ == position) {
+        return step.id();
+      }
+    }
+    return -1;
+  }
+
+  private int indexOf(int targetId) {
+    int i = 0;
+    for (final Step step : steps) {
+      if (step.id() == targetId) {
+        return i;
+      }
+      i++;
+    }
+    return -1;
   }
 
   /**
@@ -179,27 +429,184 @@ public class TapTargetSequence {
     }
     currentView.dismiss(false);
     active = false;
-    targets.clear();
+    steps.clear();
     if (listener != null) {
       listener.onSequenceCanceled(currentView.target);
     }
+    notifyFinished();
     return true;
   }
 
+  /**
+   * Dismisses the current target without animation, clears the queue and drops all references
+   * to the host, so that nothing outlives it. The sequence can't be used afterwards.
+   */
+  @UiThread
+  public void release() {
+    if (lifecycle != null) {
+      lifecycle.removeObserver(lifecycleObserver);
+      lifecycle = null;
+    }
+
+    active = false;
+    steps.clear();
+    incoming.clear();
+    mainHandler.removeCallbacks(drainIncoming);
+    drainScheduled.set(false);
+    if (currentView != null) {
+      currentView.dismissImmediately();
+      currentView = null;
+    }
+    listener = null;
+    activity = null;
+    dialog = null;
+    notifyFinished();
+  }
+
+  void notifyFinished() {
+    final Runnable callback = finishCallback;
+    finishCallback = null;
+    if (callback != null) {
+      callback.run();
+    }
+  }
+
+  /** Returns the window targets of this sequence are shown in, or null once released **/
+  @Nullable
+  Window window() {
+    if (activity != null) {
+      return activity.getWindow();
+    }
+    return dialog != null ? dialog.getWindow() : null;
+  }
+
+  boolean isHostFinishing() {
+    if (activity != null) {
+      return UiUtil.isFinishing(activity);
+    }
+    return dialog == null;
+  }
+
+  boolean isActive() {
+    return active;
+  }
+
+  /** Returns the ids of the pending targets of this sequence **/
+  List<Integer> targetIds() {
+    final List<Integer> ids = new ArrayList<>(steps.size());
+    for (final Step step : steps) {
+      ids.add(step.id());
+    }
+    return ids;
+  }
+
+  @Nullable
+  Context context() {
+    if (activity != null) {
+      return activity;
+    }
+    return dialog != null ? dialog.getContext() : null;
+  }
+
   void showNext() {
-    try {
-      TapTarget tapTarget = targets.remove();
-      if (activity != null) {
-        currentView = TapTargetView.showFor(activity, tapTarget, tapTargetListener);
-      } else {
-        currentView = TapTargetView.showFor(dialog, tapTarget, tapTargetListener);
-      }
-    } catch (NoSuchElementException e) {
+    if (activity == null && dialog == null) {
+      // Released
+      return;
+    }
+
+    final Step step = steps.poll();
+    if (step == null) {
       currentView = null;
+      active = false;
       // No more targets
       if (listener != null) {
         listener.onSequenceFinish();
       }
+      notifyFinished();
+      return;
+    }
+
+    final TapTarget tapTarget = step.resolve(window(), context());
+    index++;
+
+    // Views that haven't been laid out yet, e.g. when the sequence is started from onCreate, can
+    // only be told apart from unreachable ones after their layout. Views that never get there are
+    // skipped after a while.
+    final View view = tapTarget.touchTarget();
+    if (view != null && tapTarget.isReachable() && !ViewCompat.isLaidOut(view)) {
+      ViewUtil.onLaidOut(view, LAYOUT_TIMEOUT_MILLIS, new Runnable() {
+        @Override
+        public void run() {
+          if (activity != null || dialog != null) {
+            show(tapTarget);
+          }
+        }
+      }, new Runnable() {
+        @Override
+        public void run() {
+          if (activity != null || dialog != null) {
+            skip(tapTarget);
+          }
+        }
+      });
+      return;
+    }
+
+    show(tapTarget);
+  }
+
+  private void show(TapTarget tapTarget) {
+    if (!tapTarget.isReachable()) {
+      // Skipped without building a view for it, as it would never become ready
+      skip(tapTarget);
+      return;
+    }
+
+    // The sequence's defaults are handed to the view, the target may be shown elsewhere too
+    if (activity != null) {
+      currentView = TapTargetView.showFor(activity, tapTarget, tapTargetListener, timing, theme);
+    } else {
+      currentView = TapTargetView.showFor(dialog, tapTarget, tapTargetListener, timing, theme);
+    }
+    if (restoreExpanded) {
+      restoreExpanded = false;
+      currentView.restoreState(new TapTargetState(index, tapTarget.id(),
+          TapTargetState.PHASE_EXPANDED));
+    }
+  }
+
+  private void skip(TapTarget tapTarget) {
+    if (skipListener != null) {
+      skipListener.onSequenceSkip(tapTarget);
+    }
+    showNext();
+  }
+
+  /** A pending entry of the queue, which is turned into a {@link TapTarget} once it is reached **/
+  abstract static class Step {
+    /** Returns the id of the target, which has to be known without creating the target **/
+    abstract int id();
+
+    /** Returns the target of this step, the given window and context belong to the sequence's host **/
+    abstract TapTarget resolve(Window window, Context context);
+  }
+
+  static class TargetStep extends Step {
+    final TapTarget target;
+
+    TargetStep(TapTarget target) {
+      if (target == null) throw new IllegalArgumentException("Given null target");
+      this.target = target;
+    }
+
+    @Override
+    int id() {
+      return target.id();
+    }
+
+    @Override
+    TapTarget resolve(Window window, Context context) {
+      return target;
     }
   }
 
@@ -232,6 +639,7 @@ public class TapTargetSequence {
         if (listener != null) {
           listener.onSequenceCanceled(view.target);
         }
+        notifyFinished();
       }
     }
   };
@@ -0,0 +1,522 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.text.PrecomputedText;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.view.View;
+import androidx.annotation.ColorInt;
+import androidx.annotation.ColorRes;
+import androidx.annotation.DimenRes;
+import androidx.annotation.DrawableRes;
+import androidx.annotation.IdRes;
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.Toolbar;
+import androidx.core.text.PrecomputedTextCompat;
+
+/**
+ * An immutable description of a tap target's content and appearance.
+ * <p>
+ * Unlike {@link TapTarget}, a spec can be built on any thread: colors and dimensions are resolved
+ * when it is built, and its text can be precomputed. Specs can be cached and shared across
+ * sequences and activities, as every call to one of the {@code for*} methods creates a fresh
+ * {@link TapTarget} that holds the state of a single show.
+ */
+public class TapTargetSpec {
+  final CharSequence title;
+  @Nullable
+  final CharSequence description;
+  // Holds every option of the spec, it is never handed out so that it can't be changed
+  private final TapTarget options;
+  @Nullable
+  final Integer outerCircleColor;
+  @Nullable
+  final Integer targetCircleColor;
+  @Nullable
+  final Integer titleTextColor;
+  @Nullable
+  final Integer descriptionTextColor;
+  @Nullable
+  final Integer dimColor;
+  final int titleTextSize;
+  final int descriptionTextSize;
+  @Nullable
+  final Drawable.ConstantState icon;
+
+  TapTargetSpec(Builder builder, CharSequence title, @Nullable CharSequence description,
+                int titleTextSize, int descriptionTextSize) {
+    final Context context = builder.context;
+    this.title = title;
+    this.description = description;
+    this.options = new TapTarget(title, description);
+    this.options.copyOptionsFrom(builder.options);
+    this.outerCircleColor = builder.options.outerCircleColorInt(context);
+    this.targetCircleColor = builder.options.targetCircleColorInt(context);
+    this.titleTextColor = builder.options.titleTextColorInt(context);
+    this.descriptionTextColor = builder.options.descriptionTextColorInt(context);
+    this.dimColor = builder.options.dimColorInt(context);
+    this.titleTextSize = titleTextSize;
+    this.descriptionTextSize = descriptionTextSize;
+    this.icon = builder.icon != null ? builder.icon.getConstantState() : null;
+  }
+
+  /** Return a new tap target for the specified view **/
+  public TapTarget forView(View view) {
+    return apply(TapTarget.forView(view, title, description));
+  }
+
+  /** Return a new tap target for the specified bounds **/
+  public TapTarget forBounds(Rect bounds) {
+    return apply(TapTarget.forBounds(bounds, title, description));
+  }
+
+  /** Return a new tap target for the menu item from the given toolbar **/
+  public TapTarget forToolbarMenuItem(Toolbar toolbar, @IdRes int menuItemId) {
+    return apply(TapTarget.forToolbarMenuItem(toolbar, menuItemId, title, description));
+  }
+
+  /** Return a new tap target for the menu item from the given toolbar **/
+  public TapTarget forToolbarMenuItem(android.widget.Toolbar toolbar, @IdRes int menuItemId) {
+    return apply(TapTarget.forToolbarMenuItem(toolbar, menuItemId, title, description));
+  }
+
+  /** Return a new tap target for the navigation button (back, up, etc) from the given toolbar **/
+  public TapTarget forToolbarNavigationIcon(Toolbar toolbar) {
+    return apply(TapTarget.forToolbarNavigationIcon(toolbar, title, description));
+  }
+
+  /** Return a new tap target for the navigation button (back, up, etc) from the given toolbar **/
+  public TapTarget forToolbarNavigationIcon(android.widget.Toolbar toolbar) {
+    return apply(TapTarget.forToolbarNavigationIcon(toolbar, title, description));
+  }
+
+  /** Return a new tap target for the overflow button from the given toolbar **/
+  public TapTarget forToolbarOverflow(Toolbar toolbar) {
+    return apply(TapTarget.forToolbarOverflow(toolbar, title, description));
+  }
+
+  /** Return a new tap target for the overflow button from the given toolbar **/
+  public TapTarget forToolbarOverflow(android.widget.Toolbar toolbar) {
+    return apply(TapTarget.forToolbarOverflow(toolbar, title, description));
+  }
+
+  /** Return the id associated with this spec **/
+  public int id() {
+    return options.id;
+  }
+
+  TapTarget apply(TapTarget target) {
+    target.copyOptionsFrom(options);
+    if (outerCircleColor != null) target.outerCircleColorInt(outerCircleColor);
+    if (targetCircleColor != null) target.targetCircleColorInt(targetCircleColor);
+    if (titleTextColor != null) target.titleTextColorInt(titleTextColor);
+    if (descriptionTextColor != null) target.descriptionTextColorInt(descriptionTextColor);
+    if (dimColor != null) target.dimColorInt(dimColor);
+    if (icon != null) target.icon(icon.newDrawable());
+    target.resolvedTitleTextSize = titleTextSize;
+    target.resolvedDescriptionTextSize = descriptionTextSize;
+    return target;
+  }
+
+  /**
+   * Builds a {@link TapTargetSpec}, its options are the same as the ones of {@link TapTarget}.
+   * Unlike most of this library, a builder may be used on any thread, though a single builder
+   * must not be shared between threads.
+   */
+  public static class Builder {
+    final Context context;
+    final TapTarget options;
+    @Nullable
+    CharSequence description;
+    @Nullable
+    Drawable icon;
+    boolean precomputeText = false;
+
+    public Builder(Context context, CharSequence title) {
+      if (context == null) throw new IllegalArgumentException("Context is null");
+      this.context = context;
+      this.options = new TapTarget(title, null);
+    }
+
+    /** Specify the description text **/
+    public Builder description(@Nullable CharSequence description) {
+      this.description = description;
+      return this;
+    }
+
+    /** @see TapTarget#id(int) **/
+    public Builder id(int id) {
+      options.id(id);
+      return this;
+    }
+
+    /** @see TapTarget#outerCircleColor(int) **/
+    public Builder outerCircleColor(@ColorRes int color) {
+      options.outerCircleColor(color);
+      return this;
+    }
+
+    /** @see TapTarget#outerCircleColorInt(int) **/
+    public Builder outerCircleColorInt(@ColorInt int color) {
+      options.outerCircleColorInt(color);
+      return this;
+    }
+
+    /** @see TapTarget#outerCircleAlpha(float) **/
+    public Builder outerCircleAlpha(float alpha) {
+      options.outerCircleAlpha(alpha);
+      return this;
+    }
+
+    /** @see TapTarget#targetCircleColor(int) **/
+    public Builder targetCircleColor(@ColorRes int color) {
+      options.targetCircleColor(color);
+      return this;
+    }
+
+    /** @see TapTarget#targetCircleColorInt(int) **/
+    public Builder targetCircleColorInt(@ColorInt int color) {
+      options.targetCircleColorInt(color);
+      return this;
+    }
+
+    /** @see TapTarget#textColor(int) **/
+    public Builder textColor(@ColorRes int color) {
+      options.textColor(color);
+      return this;
+    }
+
+    /** @see TapTarget#textColorInt(int) **/
+    public Builder textColorInt(@ColorInt int color) {
+      options.textColorInt(color);
+      return this;
+    }
+
+    /** @see TapTarget#titleTextColor(int) **/
+    public Builder titleTextColor(@ColorRes int color) {
+      options.titleTextColor(color);
+      return this;
+    }
+
+    /** @see TapTarget#titleTextColorInt(int) **/
+    public Builder titleTextColorInt(@ColorInt int color) {
+      options.titleTextColorInt(color);
+      return this;
+    }
+
+    /** @see TapTarget#descriptionTextColor(int) **/
+    public Builder descriptionTextColor(@ColorRes int color) {
+      options.descriptionTextColor(color);
+      return this;
+    }
+
+    /** @see TapTarget#descriptionTextColorInt(int) **/
+    public Builder descriptionTextColorInt(@ColorInt int color) {
+      options.descriptionTextColorInt(color);
+      return this;
+    }
+
+    /** @see TapTarget#dimColor(int) **/
+    public Builder dimColor(@ColorRes int color) {
+      options.dimColor(color);
+      return this;
+    }
+
+    /** @see TapTarget#dimColorInt(int) **/
+    public Builder dimColorInt(@ColorInt int color) {
+      options.dimColorInt(color);
+      return this;
+    }
+
+    /** @see TapTarget#descriptionTextAlpha(float) **/
+    public Builder descriptionTextAlpha(float alpha) {
+      options.descriptionTextAlpha(alpha);
+      return this;
+    }
+
+    /** @see TapTarget#titleTextSize(int) **/
+    public Builder titleTextSize(int sp) {
+      options.titleTextSize(sp);
+      return this;
+    }
+
+    /** @see TapTarget#titleTextDimen(int) **/
+    public Builder titleTextDimen(@DimenRes int dimen) {
+      options.titleTextDimen(dimen);
+      return this;
+    }
+
+    /** @see TapTarget#descriptionTextSize(int) **/
+    public Builder descriptionTextSize(int sp) {
+      options.descriptionTextSize(sp);
+      return this;
+    }
+
+    /** @see TapTarget#descriptionTextDimen(int) **/
+    public Builder descriptionTextDimen(@DimenRes int dimen) {
+      options.descriptionTextDimen(dimen);
+      return this;
+    }
+
+    /** @see TapTarget#textTypeface(Typeface) **/
+    public Builder textTypeface(Typeface typeface) {
+      options.textTypeface(typeface);
+      return this;
+    }
+
+    /** @see TapTarget#titleTypeface(Typeface) **/
+    public Builder titleTypeface(Typeface typeface) {
+      options.titleTypeface(typeface);
+      return this;
+    }
+
+    /** @see TapTarget#descriptionTypeface(Typeface) **/
+    public Builder descriptionTypeface(Typeface typeface) {
+      options.descriptionTypeface(typeface);
+      return this;
+    }
+
+    /** @see TapTarget#autoFitText(boolean) **/
+    public Builder autoFitText(boolean autoFit) {
+      options.autoFitText(autoFit);
+      return this;
+    }
+
+    /** @see TapTarget#autoFitMinTextSize(int) **/
+    public Builder autoFitMinTextSize(int sp) {
+      options.autoFitMinTextSize(sp);
+      return this;
+    }
+
+    /** @see TapTarget#titleMaxLines(int) **/
+    public Builder titleMaxLines(int maxLines) {
+      options.titleMaxLines(maxLines);
+      return this;
+    }
+
+    /** @see TapTarget#descriptionMaxLines(int) **/
+    public Builder descriptionMaxLines(int maxLines) {
+      options.descriptionMaxLines(maxLines);
+      return this;
+    }
+
+    /** @see TapTarget#ellipsize(TextUtils.TruncateAt) **/
+    public Builder ellipsize(@Nullable TextUtils.TruncateAt where) {
+      options.ellipsize(where);
+      return this;
+    }
+
+    /** @see TapTarget#breakStrategy(int) **/
+    public Builder breakStrategy(int breakStrategy) {
+      options.breakStrategy(breakStrategy);
+      return this;
+    }
+
+    /** @see TapTarget#hyphenationFrequency(int) **/
+    public Builder hyphenationFrequency(int frequency) {
+      options.hyphenationFrequency(frequency);
+      return this;
+    }
+
+    /** @see TapTarget#lineSpacing(float, float) **/
+    public Builder lineSpacing(float extra, float multiplier) {
+      options.lineSpacing(extra, multiplier);
+      return this;
+    }
+
+    /** @see TapTarget#drawShadow(boolean) **/
+    public Builder drawShadow(boolean draw) {
+      options.drawShadow(draw);
+      return this;
+    }
+
+    /** @see TapTarget#cancelable(boolean) **/
+    public Builder cancelable(boolean status) {
+      options.cancelable(status);
+      return this;
+    }
+
+    /** @see TapTarget#tintTarget(boolean) **/
+    public Builder tintTarget(boolean tint) {
+      options.tintTarget(tint);
+      return this;
+    }
+
+    /** @see TapTarget#transparentTarget(boolean) **/
+    public Builder transparentTarget(boolean transparent) {
+      options.transparentTarget(transparent);
+      return this;
+    }
+
+    /** @see TapTarget#targetRadius(int) **/
+    public Builder targetRadius(int targetRadius) {
+      options.targetRadius(targetRadius);
+      return this;
+    }
+
+    /** @see TapTarget#setDrawBehindStatusBar(boolean) **/
+    public Builder setDrawBehindStatusBar(boolean drawBehindStatusBar) {
+      options.setDrawBehindStatusBar(drawBehindStatusBar);
+      return this;
+    }
+
+    /** @see TapTarget#setDrawBehindNavigationBar(boolean) **/
+    public Builder setDrawBehindNavigationBar(boolean drawBehindNavigationBar) {
+      options.setDrawBehindNavigationBar(drawBehindNavigationBar);
+      return this;
+    }
+
+    /** @see TapTarget#setForceCenteredTarget(boolean) **/
+    public Builder setForceCenteredTarget(boolean forceCenteredTarget) {
+      options.setForceCenteredTarget(forceCenteredTarget);
+      return this;
+    }
+
+    /** @see TapTarget#trackTarget(boolean) **/
+    public Builder trackTarget(boolean track) {
+      options.trackTarget(track);
+      return this;
+    }
+
+    /** @see TapTarget#renderThreadAnimations(boolean) **/
+    public Builder renderThreadAnimations(boolean enabled) {
+      options.renderThreadAnimations(enabled);
+      return this;
+    }
+
+    /** @see TapTarget#pulseFrameRate(float) **/
+    public Builder pulseFrameRate(float fps) {
+      options.pulseFrameRate(fps);
+      return this;
+    }
+
+    /** @see TapTarget#timing(TapTargetTiming) **/
+    public Builder timing(TapTargetTiming timing) {
+      options.timing(timing);
+      return this;
+    }
+
+    /** @see TapTarget#theme(TapTargetTheme) **/
+    public Builder theme(TapTargetTheme theme) {
+      options.theme(theme);
+      return this;
+    }
+
+    /** @see TapTarget#passThroughTouches(boolean) **/
+    public Builder passThroughTouches(boolean passThrough) {
+      options.passThroughTouches(passThrough);
+      return this;
+    }
+
+    /**
+     * Specify the icon that will be drawn in the center of the target bounds. Every target
+     * created from the spec gets its own copy of the drawable.
+     */
+    public Builder icon(Drawable icon) {
+      if (icon == null) throw new IllegalArgumentException("Cannot use null drawable");
+      if (icon.getConstantState() == null) {
+        throw new IllegalArgumentException("Drawable cannot be copied, it has no constant state");
+      }
+      this.icon = icon;
+      options.iconSource = null;
+      return this;
+    }
+
+    /** @see TapTarget#icon(int) **/
+    public Builder icon(@DrawableRes int icon) {
+      options.icon(icon);
+      this.icon = null;
+      return this;
+    }
+
+    /**
+     * Specify whether the title and description should be measured when the spec is built, so
+     * that less work is left for laying them out when a target is shown. Text is measured with
+     * the spec's theme, text sizes, typefaces, break strategy and hyphenation frequency. It isn't
+     * precomputed for specs that auto-fit their text, as their text size is only known once shown.
+     */
+    public Builder precomputeText(boolean precompute) {
+      this.precomputeText = precompute;
+      return this;
+    }
+
+    /** Resolves all resources and returns the immutable spec **/
+    public TapTargetSpec build() {
+      final TapTargetTheme theme = options.theme;
+      final int titleSize = options.titleTextSizePx(context);
+      final int descriptionSize = options.descriptionTextSizePx(context);
+
+      final CharSequence title = options.title;
+      CharSequence resolvedTitle = title;
+      CharSequence resolvedDescription = description;
+      if (precomputeText && !options.autoFitText) {
+        // The paints match the ones of TapTargetView, so the measurements can be reused there
+        final TextPaint titlePaint = theme != null
+            ? new TextPaint(theme.titlePaint)
+            : textPaint(titleSize, options.titleTypeface != null
+                ? options.titleTypeface : Typeface.create("sans-serif-medium", Typeface.NORMAL));
+        resolvedTitle = precompute(title, titlePaint);
+        if (description != null) {
+          final TextPaint descriptionPaint = theme != null
+              ? new TextPaint(theme.descriptionPaint)
+              : textPaint(descriptionSize, options.descriptionTypeface != null
+                  ? options.descriptionTypeface : Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL));
+          resolvedDescription = precompute(description, descriptionPaint);
+        }
+      }
+
+      return new TapTargetSpec(this, resolvedTitle, resolvedDescription, titleSize, descriptionSize);
+    }
+
+    private static TextPaint textPaint(int size, Typeface typeface) {
+      final TextPaint paint = new TextPaint();
+      paint.setTextSize(size);
+      paint.setTypeface(typeface);
+      paint.setAntiAlias(true);
+      return paint;
+    }
+
+    private CharSequence precompute(CharSequence text, TextPaint paint) {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+        return precomputePlatform(text, paint);
+      }
+
+      final PrecomputedTextCompat.Params.Builder params = new PrecomputedTextCompat.Params.Builder(paint);
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+        params.setBreakStrategy(options.breakStrategy)
+            .setHyphenationFrequency(options.hyphenationFrequency);
+      }
+      return PrecomputedTextCompat.create(text, params.build());
+    }
+
+    /** StaticLayout only picks up the platform's precomputed text, so we use it directly **/
+    @TargetApi(Build.VERSION_CODES.P)
+    private CharSequence precomputePlatform(CharSequence text, TextPaint paint) {
+      final PrecomputedText.Params params = new PrecomputedText.Params.Builder(paint)
+          .setBreakStrategy(options.breakStrategy)
+          .setHyphenationFrequency(options.hyphenationFrequency)
+          .build();
+      return PrecomputedText.create(text, params);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * A snapshot of a {@link TapTargetView} or {@link TapTargetSequence} that can be saved in
+ * {@link android.app.Activity#onSaveInstanceState(android.os.Bundle)} to restore the tap target
+ * after a configuration change, without replaying it from the start.
+ *
+ * @see TapTargetView#saveState()
+ * @see TapTargetSequence#saveState()
+ */
+public class TapTargetState implements Parcelable {
+  static final int PHASE_IDLE = 0;
+  static final int PHASE_EXPANDING = 1;
+  static final int PHASE_EXPANDED = 2;
+
+  final int index;
+  final int targetId;
+  final int phase;
+
+  TapTargetState(int index, int targetId, int phase) {
+    this.index = index;
+    this.targetId = targetId;
+    this.phase = phase;
+  }
+
+  TapTargetState(Parcel in) {
+    this.index = in.readInt();
+    this.targetId = in.readInt();
+    this.phase = in.readInt();
+  }
+
+  /** Returns the zero-based position of the shown target within its sequence, or -1 **/
+  public int index() {
+    return index;
+  }
+
+  /** Returns the id of the shown target, or -1 if it has none **/
+  public int targetId() {
+    return targetId;
+  }
+
+  /** Returns whether a target was being shown when this state was saved **/
+  public boolean isShowing() {
+    return phase != PHASE_IDLE;
+  }
+
+  /** Returns whether the shown target had finished expanding when this state was saved **/
+  public boolean isExpanded() {
+    return phase == PHASE_EXPANDED;
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeInt(index);
+    dest.writeInt(targetId);
+    dest.writeInt(phase);
+  }
+
+  public static final Creator<TapTargetState> CREATOR = new Creator<TapTargetState>() {
+    @Override
+    public TapTargetState createFromParcel(Parcel in) {
+      return new TapTargetState(in);
+    }
+
+    @Override
+    public TapTargetState[] newArray(int size) {
+      return new TapTargetState[size];
+    }
+  };
+}
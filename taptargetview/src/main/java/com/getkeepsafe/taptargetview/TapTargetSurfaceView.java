@@ -0,0 +1,519 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.animation.ValueAnimator;
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.SurfaceTexture;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Choreographer;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.TextureView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewManager;
+import android.view.ViewTreeObserver;
+import android.widget.FrameLayout;
+
+import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
+
+/**
+ * An alternative host for a {@link TapTarget} that renders the overlay on its own thread.
+ * <p>
+ * The dim, circles, text and pulse are drawn into a transparent {@link SurfaceView}, or a
+ * {@link TextureView} if the overlay needs to respect the z-order of other views, using the
+ * same geometry and drawing code as {@link TapTargetView}. Overlay frames are therefore paced
+ * independently of how busy the main thread is. Touches are still handled on the main thread
+ * and reported through the regular {@link TapTargetView.Listener} callbacks.
+ * <p>
+ * This class should not be instantiated directly. Instead, please use the
+ * {@link #showFor(Activity, TapTarget, TapTargetView.Listener, boolean)} static factory method.
+ */
+@SuppressLint("ViewConstructor")
+public class TapTargetSurfaceView extends FrameLayout {
+  static final int PHASE_EXPANDING = 0;
+  static final int PHASE_PULSING = 1;
+  static final int PHASE_DISMISSING = 2;
+  static final int PHASE_CONFIRMING = 3;
+  static final int PHASE_FINISHED = 4;
+
+  final ViewManager parent;
+  final TapTarget target;
+  final Model model;
+
+  // Guards the model, which is laid out on the main thread and animated on the render thread
+  final Object lock = new Object();
+  // Guards the surface while a frame is posted to it, so it is never torn down mid-frame
+  final Object surfaceLock = new Object();
+  final HandlerThread renderThread;
+  final Handler renderHandler;
+  final Handler mainHandler;
+  final RenderLoop renderLoop = new RenderLoop();
+  // Only touched on the render thread
+  final Picture frame = new Picture();
+
+  @Nullable
+  Surface surface;
+  boolean ready;
+  boolean started;
+  volatile int phase = PHASE_EXPANDING;
+  long phaseStartNanos = -1;
+
+  float lastTouchX;
+  float lastTouchY;
+
+  private final ViewTreeObserver.OnGlobalLayoutListener globalLayoutListener;
+
+  /** A {@link TapTargetView} that is never attached and only provides geometry and drawing **/
+  static class Model extends TapTargetView {
+    final TapTargetSurfaceView host;
+
+    Model(Context context, TapTargetSurfaceView host, @Nullable ViewGroup boundingParent,
+          TapTarget target, @Nullable Listener userListener) {
+      super(context, host.parent, boundingParent, target, userListener);
+      this.host = host;
+    }
+
+    @Override
+    public void dismiss(boolean tappedTarget) {
+      host.dismiss(tappedTarget);
+    }
+
+    @Override
+    public boolean isVisible() {
+      return host.isVisible();
+    }
+  }
+
+  public static TapTargetSurfaceView showFor(Activity activity, TapTarget target) {
+    return showFor(activity, target, null, false);
+  }
+
+  /**
+   * Shows the given target in an overlay that is rendered on its own thread
+   *
+   * @param useTextureView Whether to render into a {@link TextureView} rather than a
+   *                       {@link SurfaceView}. Texture views are composited like regular views,
+   *                       which costs an extra copy but respects z-order.
+   */
+  public static TapTargetSurfaceView showFor(Activity activity, TapTarget target,
+                                             @Nullable TapTargetView.Listener listener,
+                                             boolean useTextureView) {
+    if (activity == null) throw new IllegalArgumentException("Activity is null");
+
+    final ViewGroup decor = (ViewGroup) activity.getWindow().getDecorView();
+    final ViewGroup.LayoutParams layoutParams = new ViewGroup.LayoutParams(
+        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+    final ViewGroup content = (ViewGroup) decor.findViewById(android.R.id.content);
+    final TapTargetSurfaceView view =
+        new TapTargetSurfaceView(activity, decor, content, target, listener, useTextureView);
+    decor.addView(view, layoutParams);
+
+    return view;
+  }
+
+  public TapTargetSurfaceView(Context context, ViewManager parent,
+                              @Nullable ViewGroup boundingParent, final TapTarget target,
+                              @Nullable TapTargetView.Listener userListener,
+                              boolean useTextureView) {
+    super(context);
+    if (target == null) throw new IllegalArgumentException("Target cannot be null");
+
+    this.parent = parent;
+    this.target = target;
+    this.model = new Model(context, this, boundingParent, target, userListener);
+
+    renderThread = new HandlerThread("TapTargetRenderThread");
+    renderThread.start();
+    renderHandler = new Handler(renderThread.getLooper());
+    mainHandler = new Handler(context.getMainLooper());
+
+    if (useTextureView) {
+      final TextureView textureView = new TextureView(context);
+      textureView.setOpaque(false);
+      textureView.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+        @Override
+        public void onSurfaceTextureAvailable(SurfaceTexture texture, int width, int height) {
+          setSurface(new Surface(texture));
+        }
+
+        @Override
+        public void onSurfaceTextureSizeChanged(SurfaceTexture texture, int width, int height) {
+        }
+
+        @Override
+        public boolean onSurfaceTextureDestroyed(SurfaceTexture texture) {
+          final Surface previous = surface;
+          setSurface(null);
+          if (previous != null) {
+            previous.release();
+          }
+          return true;
+        }
+
+        @Override
+        public void onSurfaceTextureUpdated(SurfaceTexture texture) {
+        }
+      });
+      addView(textureView, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+    } else {
+      final SurfaceView surfaceView = new SurfaceView(context);
+      surfaceView.setZOrderOnTop(true);
+      surfaceView.getHolder().setFormat(PixelFormat.TRANSLUCENT);
+      surfaceView.getHolder().addCallback(new SurfaceHolder.Callback() {
+        @Override
+        public void surfaceCreated(SurfaceHolder holder) {
+          setSurface(holder.getSurface());
+        }
+
+        @Override
+        public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        }
+
+        @Override
+        public void surfaceDestroyed(SurfaceHolder holder) {
+          setSurface(null);
+        }
+      });
+      addView(surfaceView, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+    }
+
+    globalLayoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+      @Override
+      public void onGlobalLayout() {
+        if (phase >= PHASE_DISMISSING) {
+          return;
+        }
+        target.onReady(new Runnable() {
+          @Override
+          public void run() {
+            calculateGeometry();
+          }
+        });
+      }
+    };
+    getViewTreeObserver().addOnGlobalLayoutListener(globalLayoutListener);
+
+    setFocusableInTouchMode(true);
+    setClickable(true);
+    setOnClickListener(new OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        onTap();
+      }
+    });
+  }
+
+  /** Lays out the model on the main thread, reusing {@link TapTargetView}'s calculations **/
+  void calculateGeometry() {
+    synchronized (lock) {
+      model.layout(0, 0, getWidth(), getHeight());
+      model.updateTextLayouts();
+
+      model.targetBounds.set(target.bounds());
+      getLocationOnScreen(model.screenOffset);
+      model.targetBounds.offset(-model.screenOffset[0], -model.screenOffset[1]);
+
+      model.lastInsets = ViewCompat.getRootWindowInsets(this);
+      model.updateBoundaries();
+
+      model.drawTintedTarget();
+      if (target.autoFitText) {
+        model.fitTextLayouts();
+      }
+      model.calculateDimensions();
+      model.visible = true;
+      ready = true;
+    }
+
+    requestFocus();
+    startRendering();
+  }
+
+  void setSurface(@Nullable Surface surface) {
+    synchronized (surfaceLock) {
+      synchronized (lock) {
+        this.surface = surface;
+      }
+    }
+    startRendering();
+  }
+
+  void startRendering() {
+    synchronized (lock) {
+      if (started || !ready || surface == null) {
+        return;
+      }
+      started = true;
+    }
+
+    renderHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        Choreographer.getInstance().postFrameCallback(renderLoop);
+      }
+    });
+  }
+
+  /**
+   * Drives the model's animators manually and draws a frame, all on the render thread. The
+   * model is only locked while it is advanced and recorded, posting the frame can block on the
+   * surface and must not hold up the main thread
+   */
+  final class RenderLoop implements Choreographer.FrameCallback {
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      synchronized (lock) {
+        if (phaseStartNanos < 0) {
+          phaseStartNanos = frameTimeNanos;
+        }
+
+        final long elapsed = (frameTimeNanos - phaseStartNanos) / 1000000L;
+        switch (phase) {
+          case PHASE_EXPANDING: {
+            final long delay = model.expandAnimation.getStartDelay();
+            final long duration = model.expandAnimation.getDuration();
+            final long playTime = Math.max(0, elapsed - delay);
+            if (model.showInstantly || playTime >= duration) {
+              // Seeking an animator to its very end notifies its end listeners on some API
+              // levels, so the final frame is applied directly
+              model.expandContractUpdateListener.onUpdate(1.0f);
+              setPhase(PHASE_PULSING, frameTimeNanos);
+              setSurfaceFrameRate(target.pulseFrameRate);
+            } else {
+              model.expandAnimation.setCurrentPlayTime(playTime);
+            }
+            break;
+          }
+          case PHASE_PULSING:
+            model.pulseAnimation.setCurrentPlayTime(elapsed % model.pulseAnimation.getDuration());
+            break;
+          case PHASE_DISMISSING:
+          case PHASE_CONFIRMING: {
+            final ValueAnimator animator = phase == PHASE_CONFIRMING
+                ? model.dismissConfirmAnimation : model.dismissAnimation;
+            animator.setCurrentPlayTime(Math.min(elapsed, animator.getDuration() - 1));
+            if (elapsed >= animator.getDuration()) {
+              setPhase(PHASE_FINISHED, frameTimeNanos);
+              mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                  finishDismiss();
+                }
+              });
+            }
+            break;
+          }
+          default:
+            break;
+        }
+
+        recordFrame();
+      }
+
+      drawFrame();
+
+      if (phase == PHASE_PULSING && model.pulseFrameInterval > 0) {
+        Choreographer.getInstance().postFrameCallbackDelayed(this, model.pulseFrameInterval);
+      } else if (phase != PHASE_FINISHED) {
+        Choreographer.getInstance().postFrameCallback(this);
+      }
+    }
+  }
+
+  void setPhase(int phase, long frameTimeNanos) {
+    this.phase = phase;
+    this.phaseStartNanos = frameTimeNanos;
+  }
+
+  /** Votes for the given frame rate on our own surface, or resets the vote when given 0 **/
+  @SuppressLint("NewApi")
+  void setSurfaceFrameRate(float fps) {
+    if (Build.VERSION.SDK_INT >= 30 && surface != null && surface.isValid()) {
+      surface.setFrameRate(fps, Surface.FRAME_RATE_COMPATIBILITY_DEFAULT);
+    }
+  }
+
+  /** Records the model's current state into {@link #frame}, must be called holding the lock **/
+  void recordFrame() {
+    final Canvas canvas = frame.beginRecording(model.getWidth(), model.getHeight());
+    try {
+      model.onDraw(canvas);
+    } finally {
+      frame.endRecording();
+    }
+  }
+
+  @SuppressLint("NewApi")
+  void drawFrame() {
+    synchronized (surfaceLock) {
+      final Surface surface = this.surface;
+      if (surface == null || !surface.isValid()) {
+        return;
+      }
+
+      final Canvas canvas = Build.VERSION.SDK_INT >= 23
+          ? surface.lockHardwareCanvas() : surface.lockCanvas(null);
+      try {
+        canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+        canvas.drawPicture(frame);
+      } finally {
+        surface.unlockCanvasAndPost(canvas);
+      }
+    }
+  }
+
+  void onTap() {
+    final TapTargetView.Listener listener = model.listener;
+    final boolean clickedInTarget;
+    final boolean clickedInsideOfOuterCircle;
+    synchronized (lock) {
+      if (listener == null || phase >= PHASE_DISMISSING || model.outerCircleCenter == null) return;
+
+      // Like TapTargetView, taps are accepted while expanding and tested against the final size
+      clickedInTarget = model.distance(model.targetBounds.centerX(), model.targetBounds.centerY(),
+          (int) lastTouchX, (int) lastTouchY) <= Math.max(model.targetCircleRadius, model.TARGET_RADIUS);
+      clickedInsideOfOuterCircle = model.distance(model.outerCircleCenter[0], model.outerCircleCenter[1],
+          (int) lastTouchX, (int) lastTouchY)
+          <= Math.max(model.outerCircleRadius, model.calculatedOuterCircleRadius);
+    }
+
+    if (clickedInTarget) {
+      listener.onTargetClick(model);
+    } else if (clickedInsideOfOuterCircle) {
+      listener.onOuterCircleClick(model);
+    } else if (model.cancelable) {
+      listener.onTargetCancel(model);
+    }
+  }
+
+  /**
+   * Dismiss this view
+   * @param tappedTarget If the user tapped the target or not
+   *                     (results in different dismiss animations)
+   */
+  public void dismiss(boolean tappedTarget) {
+    synchronized (lock) {
+      if (phase >= PHASE_DISMISSING) {
+        return;
+      }
+
+      if (!started) {
+        phase = PHASE_FINISHED;
+      } else {
+        // The render thread picks up the new phase on its next frame, which has to be requested
+        // at the full frame rate again
+        phase = tappedTarget ? PHASE_CONFIRMING : PHASE_DISMISSING;
+        phaseStartNanos = -1;
+        model.captureDismissStartState();
+        renderHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            synchronized (lock) {
+              setSurfaceFrameRate(0);
+            }
+            Choreographer.getInstance().removeFrameCallback(renderLoop);
+            Choreographer.getInstance().postFrameCallback(renderLoop);
+          }
+        });
+        return;
+      }
+    }
+
+    finishDismiss();
+  }
+
+  void finishDismiss() {
+    model.onDismiss(true);
+    ViewUtil.removeView(parent, this);
+  }
+
+  /** Returns whether this view is visible or not **/
+  public boolean isVisible() {
+    return ready && phase < PHASE_FINISHED;
+  }
+
+  @Override
+  public boolean onTouchEvent(MotionEvent e) {
+    lastTouchX = e.getX();
+    lastTouchY = e.getY();
+    return super.onTouchEvent(e);
+  }
+
+  @Override
+  public boolean onKeyDown(int keyCode, KeyEvent event) {
+    if (isVisible() && model.cancelable && keyCode == KeyEvent.KEYCODE_BACK) {
+      event.startTracking();
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public boolean onKeyUp(int keyCode, KeyEvent event) {
+    if (isVisible() && phase == PHASE_PULSING && model.cancelable
+        && keyCode == KeyEvent.KEYCODE_BACK && event.isTracking() && !event.isCanceled()) {
+      if (model.listener != null) {
+        model.listener.onTargetCancel(model);
+      } else {
+        new TapTargetView.Listener().onTargetCancel(model);
+      }
+
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    synchronized (surfaceLock) {
+      synchronized (lock) {
+        phase = PHASE_FINISHED;
+        surface = null;
+      }
+    }
+
+    ViewUtil.removeOnGlobalLayoutListener(getViewTreeObserver(), globalLayoutListener);
+    renderHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        Choreographer.getInstance().removeFrameCallback(renderLoop);
+      }
+    });
+    if (Build.VERSION.SDK_INT >= 18) {
+      renderThread.quitSafely();
+    } else {
+      renderThread.quit();
+    }
+    model.onDismiss(false);
+  }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import androidx.annotation.ColorInt;
+import androidx.annotation.ColorRes;
+import androidx.annotation.DimenRes;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+/**
+ * The colors, text sizes and typefaces of a tap target, resolved once against a {@link Context}
+ * and shared by any number of targets and sequences.
+ * <p>
+ * Views showing a themed target copy the theme's pre-configured paints instead of resolving
+ * their styling again. When a target has a theme, the theme takes precedence over the target's
+ * own color, text size and typeface options.
+ *
+ * @see TapTarget#theme(TapTargetTheme)
+ * @see TapTargetSequence#theme(TapTargetTheme)
+ */
+public class TapTargetTheme {
+  // Templates copied by TapTargetView, these must never be modified after the theme is built
+  final TextPaint titlePaint;
+  final TextPaint descriptionPaint;
+  final Paint outerCirclePaint;
+  final Paint targetCirclePaint;
+  final Paint targetCirclePulsePaint;
+  final int dimColor;
+  final boolean isDark;
+
+  TapTargetTheme(Builder builder) {
+    final Context context = builder.context;
+    isDark = UiUtil.themeIntAttr(context, "isLightTheme") == 0;
+
+    outerCirclePaint = new Paint();
+    outerCirclePaint.setAntiAlias(true);
+    final Integer outerCircleColor = colorResOrInt(context, builder.outerCircleColor, builder.outerCircleColorRes);
+    if (outerCircleColor != null) {
+      outerCirclePaint.setColor(outerCircleColor);
+    } else if (context.getTheme() != null) {
+      outerCirclePaint.setColor(UiUtil.themeIntAttr(context, "colorPrimary"));
+    } else {
+      outerCirclePaint.setColor(Color.WHITE);
+    }
+
+    targetCirclePaint = new Paint();
+    targetCirclePaint.setAntiAlias(true);
+    final Integer targetCircleColor = colorResOrInt(context, builder.targetCircleColor, builder.targetCircleColorRes);
+    targetCirclePaint.setColor(targetCircleColor != null
+        ? targetCircleColor : (isDark ? Color.BLACK : Color.WHITE));
+
+    targetCirclePulsePaint = new Paint();
+    targetCirclePulsePaint.setAntiAlias(true);
+    targetCirclePulsePaint.setColor(targetCirclePaint.getColor());
+
+    final Integer dim = colorResOrInt(context, builder.dimColor, builder.dimColorRes);
+    dimColor = dim != null ? UiUtil.setAlpha(dim, 0.3f) : -1;
+
+    titlePaint = new TextPaint();
+    titlePaint.setAntiAlias(true);
+    titlePaint.setTextSize(builder.titleTextDimen != -1
+        ? context.getResources().getDimensionPixelSize(builder.titleTextDimen)
+        : UiUtil.sp(context, builder.titleTextSize));
+    titlePaint.setTypeface(builder.titleTypeface != null
+        ? builder.titleTypeface : Typeface.create("sans-serif-medium", Typeface.NORMAL));
+    final Integer titleTextColor = colorResOrInt(context, builder.titleTextColor, builder.titleTextColorRes);
+    titlePaint.setColor(titleTextColor != null
+        ? titleTextColor : (isDark ? Color.BLACK : Color.WHITE));
+
+    descriptionPaint = new TextPaint();
+    descriptionPaint.setAntiAlias(true);
+    descriptionPaint.setTextSize(builder.descriptionTextDimen != -1
+        ? context.getResources().getDimensionPixelSize(builder.descriptionTextDimen)
+        : UiUtil.sp(context, builder.descriptionTextSize));
+    descriptionPaint.setTypeface(builder.descriptionTypeface != null
+        ? builder.descriptionTypeface : Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL));
+    final Integer descriptionTextColor = colorResOrInt(context, builder.descriptionTextColor,
+        builder.descriptionTextColorRes);
+    descriptionPaint.setColor(descriptionTextColor != null
+        ? descriptionTextColor : titlePaint.getColor());
+  }
+
+  @Nullable
+  private static Integer colorResOrInt(Context context, @Nullable Integer value,
+                                       @ColorRes int resource) {
+    if (resource != -1) {
+      return ContextCompat.getColor(context, resource);
+    }
+
+    return value;
+  }
+
+  /** Builds a {@link TapTargetTheme}, unset options fall back to the same defaults as a {@link TapTarget} **/
+  public static class Builder {
+    final Context context;
+
+    @ColorRes int outerCircleColorRes = -1;
+    @ColorRes int targetCircleColorRes = -1;
+    @ColorRes int titleTextColorRes = -1;
+    @ColorRes int descriptionTextColorRes = -1;
+    @ColorRes int dimColorRes = -1;
+    @Nullable Integer outerCircleColor;
+    @Nullable Integer targetCircleColor;
+    @Nullable Integer titleTextColor;
+    @Nullable Integer descriptionTextColor;
+    @Nullable Integer dimColor;
+
+    @DimenRes int titleTextDimen = -1;
+    @DimenRes int descriptionTextDimen = -1;
+    int titleTextSize = 20;
+    int descriptionTextSize = 18;
+    @Nullable Typeface titleTypeface;
+    @Nullable Typeface descriptionTypeface;
+
+    /** @param context The context to resolve resources and theme attributes against **/
+    public Builder(Context context) {
+      if (context == null) throw new IllegalArgumentException("Context is null");
+      this.context = context;
+    }
+
+    /** Specify a color resource for the outer circle **/
+    public Builder outerCircleColor(@ColorRes int color) {
+      this.outerCircleColorRes = color;
+      return this;
+    }
+
+    /** Specify a color integer for the outer circle **/
+    public Builder outerCircleColorInt(@ColorInt int color) {
+      this.outerCircleColor = color;
+      this.outerCircleColorRes = -1;
+      return this;
+    }
+
+    /** Specify a color resource for the target circle **/
+    public Builder targetCircleColor(@ColorRes int color) {
+      this.targetCircleColorRes = color;
+      return this;
+    }
+
+    /** Specify a color integer for the target circle **/
+    public Builder targetCircleColorInt(@ColorInt int color) {
+      this.targetCircleColor = color;
+      this.targetCircleColorRes = -1;
+      return this;
+    }
+
+    /** Specify a color resource for both the title and description text **/
+    public Builder textColor(@ColorRes int color) {
+      this.titleTextColorRes = color;
+      this.descriptionTextColorRes = color;
+      return this;
+    }
+
+    /** Specify a color integer for both the title and description text **/
+    public Builder textColorInt(@ColorInt int color) {
+      this.titleTextColor = color;
+      this.descriptionTextColor = color;
+      this.titleTextColorRes = -1;
+      this.descriptionTextColorRes = -1;
+      return this;
+    }
+
+    /** Specify a color resource for the title text **/
+    public Builder titleTextColor(@ColorRes int color) {
+      this.titleTextColorRes = color;
+      return this;
+    }
+
+    /** Specify a color integer for the title text **/
+    public Builder titleTextColorInt(@ColorInt int color) {
+      this.titleTextColor = color;
+      this.titleTextColorRes = -1;
+      return this;
+    }
+
+    /** Specify a color resource for the description text **/
+    public Builder descriptionTextColor(@ColorRes int color) {
+      this.descriptionTextColorRes = color;
+      return this;
+    }
+
+    /** Specify a color integer for the description text **/
+    public Builder descriptionTextColorInt(@ColorInt int color) {
+      this.descriptionTextColor = color;
+      this.descriptionTextColorRes = -1;
+      return this;
+    }
+
+    /** Specify a color resource to dim the background with **/
+    public Builder dimColor(@ColorRes int color) {
+      this.dimColorRes = color;
+      return this;
+    }
+
+    /** Specify a color integer to dim the background with **/
+    public Builder dimColorInt(@ColorInt int color) {
+      this.dimColor = color;
+      this.dimColorRes = -1;
+      return this;
+    }
+
+    /** Specify the text size for the title in SP **/
+    public Builder titleTextSize(int sp) {
+      if (sp < 0) throw new IllegalArgumentException("Given negative text size");
+      this.titleTextSize = sp;
+      return this;
+    }
+
+    /** Specify the text size for the title via a dimen resource, taking precedence over SP **/
+    public Builder titleTextDimen(@DimenRes int dimen) {
+      this.titleTextDimen = dimen;
+      return this;
+    }
+
+    /** Specify the text size for the description in SP **/
+    public Builder descriptionTextSize(int sp) {
+      if (sp < 0) throw new IllegalArgumentException("Given negative text size");
+      this.descriptionTextSize = sp;
+      return this;
+    }
+
+    /** Specify the text size for the description via a dimen resource, taking precedence over SP **/
+    public Builder descriptionTextDimen(@DimenRes int dimen) {
+      this.descriptionTextDimen = dimen;
+      return this;
+    }
+
+    /** Specify a typeface for both the title and description text **/
+    public Builder textTypeface(Typeface typeface) {
+      if (typeface == null) throw new IllegalArgumentException("Cannot use a null typeface");
+      this.titleTypeface = typeface;
+      this.descriptionTypeface = typeface;
+      return this;
+    }
+
+    /** Specify the typeface for the title text **/
+    public Builder titleTypeface(Typeface typeface) {
+      if (typeface == null) throw new IllegalArgumentException("Cannot use a null typeface");
+      this.titleTypeface = typeface;
+      return this;
+    }
+
+    /** Specify the typeface for the description text **/
+    public Builder descriptionTypeface(Typeface typeface) {
+      if (typeface == null) throw new IllegalArgumentException("Cannot use a null typeface");
+      this.descriptionTypeface = typeface;
+      return this;
+    }
+
+    /** Resolves all resources and returns the immutable theme **/
+    public TapTargetTheme build() {
+      return new TapTargetTheme(this);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.animation.TimeInterpolator;
+import android.view.animation.AccelerateDecelerateInterpolator;
+
+/**
+ * Describes the timing of a {@link TapTargetView}'s animations.
+ * <p>
+ * A timing can be set per target via {@link TapTarget#timing(TapTargetTiming)}, or for every
+ * target of a sequence via {@link TapTargetSequence#timing(TapTargetTiming)}. All durations are
+ * scaled by the system's animator duration scale, and when animations are turned off
+ * system-wide the target is shown instantly.
+ */
+public class TapTargetTiming {
+  // Used by targets without a timing, this must never be modified
+  static final TapTargetTiming DEFAULT = new TapTargetTiming();
+
+  long startDelay = 250;
+  long expandDuration = 250;
+  long pulseDuration = 1000;
+  long dismissDuration = 250;
+  TimeInterpolator interpolator = new AccelerateDecelerateInterpolator();
+  boolean instant = false;
+
+  /** Specify the delay in milliseconds before the target starts expanding **/
+  public TapTargetTiming startDelay(long millis) {
+    if (millis < 0) throw new IllegalArgumentException("Given negative delay");
+    this.startDelay = millis;
+    return this;
+  }
+
+  /** Specify the duration in milliseconds of the expand animation **/
+  public TapTargetTiming expandDuration(long millis) {
+    if (millis < 0) throw new IllegalArgumentException("Given negative duration");
+    this.expandDuration = millis;
+    return this;
+  }
+
+  /** Specify the duration in milliseconds of a single pulse of the target **/
+  public TapTargetTiming pulseDuration(long millis) {
+    if (millis <= 0) throw new IllegalArgumentException("Given non-positive duration");
+    this.pulseDuration = millis;
+    return this;
+  }
+
+  /** Specify the duration in milliseconds of the dismiss animations **/
+  public TapTargetTiming dismissDuration(long millis) {
+    if (millis < 0) throw new IllegalArgumentException("Given negative duration");
+    this.dismissDuration = millis;
+    return this;
+  }
+
+  /** Specify the interpolator used by the expand and dismiss animations **/
+  public TapTargetTiming interpolator(TimeInterpolator interpolator) {
+    if (interpolator == null) throw new IllegalArgumentException("Cannot use a null interpolator");
+    this.interpolator = interpolator;
+    return this;
+  }
+
+  /**
+   * Specify whether the target should skip its expand animation and start out fully expanded
+   * as soon as it is laid out
+   */
+  public TapTargetTiming instant(boolean instant) {
+    this.instant = instant;
+    return this;
+  }
+}
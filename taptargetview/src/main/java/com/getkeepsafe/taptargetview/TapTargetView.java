@@ -15,6 +15,9 @@
  */
 package com.getkeepsafe.taptargetview;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.TimeInterpolator;
 import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
@@ -31,18 +34,28 @@ import android.graphics.Path;
 import android.graphics.PixelFormat;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffColorFilter;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.Region;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.graphics.Insets;
+import androidx.core.view.OnApplyWindowInsetsListener;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsAnimationCompat;
+import androidx.core.view.WindowInsetsCompat;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
 import android.text.DynamicLayout;
 import android.text.Layout;
 import android.text.SpannableStringBuilder;
 import android.text.StaticLayout;
 import android.text.TextPaint;
+import android.text.TextUtils;
 import android.util.DisplayMetrics;
 import android.view.Gravity;
 import android.view.KeyEvent;
@@ -51,10 +64,16 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewManager;
 import android.view.ViewOutlineProvider;
+import android.view.ViewAnimationUtils;
+import android.view.ViewConfiguration;
 import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.view.animation.AccelerateDecelerateInterpolator;
 
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Set;
+
 /**
  * TapTargetView implements a feature discovery paradigm following Google's Material Design
  * guidelines.
@@ -72,8 +91,9 @@ public class TapTargetView extends View {
   private boolean isInteractable = true;
 
   final int TARGET_PADDING;
-  final int TARGET_RADIUS;
-  final int TARGET_PULSE_RADIUS;
+  // Derived from the target, so these change when the view is rebound
+  int TARGET_RADIUS;
+  int TARGET_PULSE_RADIUS;
   final int TEXT_PADDING;
   final int TEXT_SPACING;
   final int TEXT_MAX_WIDTH;
@@ -87,7 +107,11 @@ public class TapTargetView extends View {
   @Nullable
   final ViewGroup boundingParent;
   final ViewManager parent;
-  final TapTarget target;
+  TapTarget target;
+
+  // Set for views shown via showPooledFor, which return to their pool once dismissed
+  @Nullable
+  TapTargetViewPool pool;
   final Rect targetBounds;
 
   final TextPaint titlePaint;
@@ -104,6 +128,7 @@ public class TapTargetView extends View {
   CharSequence description;
   @Nullable
   StaticLayout descriptionLayout;
+  long textLayoutNanos;
   boolean isDark;
   boolean debug;
   boolean shouldTintTarget;
@@ -126,6 +151,7 @@ public class TapTargetView extends View {
   Rect textBounds;
 
   Path outerCirclePath;
+  Path targetCirclePath;
   float outerCircleRadius;
   int calculatedOuterCircleRadius;
   int[] outerCircleCenter;
@@ -140,42 +166,200 @@ public class TapTargetView extends View {
   int textAlpha;
   int dimColor;
 
+  // State captured when a dismiss starts, so it can continue from wherever the expand was
+  float dismissStartOuterCircleRadius;
+  int dismissStartOuterCircleAlpha;
+  float dismissStartTargetCircleRadius;
+  int dismissStartTargetCircleAlpha;
+  int dismissStartTextAlpha;
+  float dismissStartTargetCirclePulseRadius;
+
   float lastTouchX;
   float lastTouchY;
 
+  // Touch pass-through state, see TapTarget#passThroughTouches
+  boolean passingThrough;
+  final int[] passThroughOffset = new int[2];
+  float passThroughDownX;
+  float passThroughDownY;
+
   int topBoundary;
   int bottomBoundary;
+  int visibleTop;
+  final boolean layoutNoLimits;
+
+  // Last known insets, boundaries are derived from these once they have been dispatched to us
+  @Nullable
+  WindowInsetsCompat lastInsets;
+  final int[] boundingParentLocation = new int[2];
+
+  final int[] screenOffset = new int[2];
 
   Bitmap tintedTarget;
 
+  // Timing related variables, see TapTargetTiming
+  boolean showInstantly;
+  boolean animationsDisabled;
+  long showStartTime;
+  long firstFrameTime;
+
   Listener listener;
 
+  // Defaults of the sequence showing this view, the target's own options take precedence
+  @Nullable
+  final TapTargetTiming defaultTiming;
+  @Nullable
+  final TapTargetTheme defaultTheme;
+
+  @Nullable
+  Lifecycle boundLifecycle;
+  boolean hostStopped;
+  private final LifecycleEventObserver lifecycleObserver = new LifecycleEventObserver() {
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+      if (event == Lifecycle.Event.ON_STOP) {
+        onHostStop();
+      } else if (event == Lifecycle.Event.ON_START) {
+        onHostStart();
+      } else if (event == Lifecycle.Event.ON_DESTROY) {
+        dismissImmediately();
+      }
+    }
+  };
+
   @Nullable
   ViewOutlineProvider outlineProvider;
+  @Nullable
+  OuterCircleNode outerCircleNode;
+
+  // RenderThread animation state, see TapTarget#renderThreadAnimations
+  @Nullable
+  Animator renderThreadAnimator;
+  long revealStartTime;
+  int revealRadius;
+
+  /**
+   * Like {@link #showFor(Activity, TapTarget, Listener)}, but reuses a view previously shown in
+   * the same window via this method once it has been dismissed. Use this for hints that are
+   * shown repeatedly, to avoid allocating a new view and its animators every time.
+   */
+  public static TapTargetView showPooledFor(Activity activity, TapTarget target,
+                                            @Nullable Listener listener) {
+    if (activity == null) throw new IllegalArgumentException("Activity is null");
+    if (target == null) throw new IllegalArgumentException("Target cannot be null");
+    requireReachable(target);
+
+    final ViewGroup decor = (ViewGroup) activity.getWindow().getDecorView();
+    final TapTargetViewPool pool = TapTargetViewPool.of(decor);
+    TapTargetView tapTargetView = pool.acquire();
+    if (tapTargetView != null) {
+      tapTargetView.rebind(target, listener);
+    } else {
+      final ViewGroup content = (ViewGroup) decor.findViewById(android.R.id.content);
+      tapTargetView = new TapTargetView(activity, decor, content, target, listener);
+      tapTargetView.pool = pool;
+    }
+
+    decor.addView(tapTargetView, new ViewGroup.LayoutParams(
+        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    return tapTargetView;
+  }
+
+  /**
+   * Throws right away for targets that would never become ready, e.g. toolbar items that aren't
+   * inflated, instead of once the view is laid out
+   */
+  static void requireReachable(@Nullable TapTarget target) {
+    if (target != null && !target.isReachable()) {
+      throw new IllegalStateException(
+          "Target cannot be shown, its view is missing, gone, detached or entirely off screen");
+    }
+  }
+
+  /** The longest time {@link #showWhenIdle} waits for the main thread to become idle **/
+  public static final long IDLE_TIMEOUT_MILLIS = 1000;
 
   public static TapTargetView showFor(Activity activity, TapTarget target) {
     return showFor(activity, target, null);
   }
 
   public static TapTargetView showFor(Activity activity, TapTarget target, Listener listener) {
+    return showFor(activity, target, listener, null, null);
+  }
+
+  static TapTargetView showFor(Activity activity, TapTarget target, Listener listener,
+                               @Nullable TapTargetTiming defaultTiming,
+                               @Nullable TapTargetTheme defaultTheme) {
     if (activity == null) throw new IllegalArgumentException("Activity is null");
+    requireReachable(target);
 
     final ViewGroup decor = (ViewGroup) activity.getWindow().getDecorView();
     final ViewGroup.LayoutParams layoutParams = new ViewGroup.LayoutParams(
         ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
     final ViewGroup content = (ViewGroup) decor.findViewById(android.R.id.content);
-    final TapTargetView tapTargetView = new TapTargetView(activity, decor, content, target, listener);
+    final TapTargetView tapTargetView = new TapTargetView(activity, decor, content, target, listener,
+        defaultTiming, defaultTheme);
     decor.addView(tapTargetView, layoutParams);
 
     return tapTargetView;
   }
 
+  /**
+   * Shows the given target once the activity's window has drawn its first frame and the main
+   * thread is idle, or after {@link #IDLE_TIMEOUT_MILLIS} at the latest. Use this instead of
+   * {@link #showFor(Activity, TapTarget, Listener)} when showing a target during startup, so that
+   * it doesn't compete with the activity's first frames.
+   * <p>
+   * Nothing is shown if the activity is finishing or the target can't be shown by then.
+   */
+  public static void showWhenIdle(final Activity activity, final TapTarget target,
+                                  @Nullable final Listener listener) {
+    if (activity == null) throw new IllegalArgumentException("Activity is null");
+
+    ViewUtil.onIdleAfterFirstDraw(activity.getWindow().getDecorView(), IDLE_TIMEOUT_MILLIS,
+        new Runnable() {
+          @Override
+          public void run() {
+            if (!activity.isFinishing() && target.isReachable()) {
+              showFor(activity, target, listener);
+            }
+          }
+        });
+  }
+
+  /**
+   * Shows the given target once the dialog's window has drawn its first frame and the main
+   * thread is idle, see {@link #showWhenIdle(Activity, TapTarget, Listener)}
+   */
+  public static void showWhenIdle(final Dialog dialog, final TapTarget target,
+                                  @Nullable final Listener listener) {
+    if (dialog == null) throw new IllegalArgumentException("Dialog is null");
+    if (dialog.getWindow() == null) throw new IllegalArgumentException("Dialog has no window");
+
+    ViewUtil.onIdleAfterFirstDraw(dialog.getWindow().getDecorView(), IDLE_TIMEOUT_MILLIS,
+        new Runnable() {
+          @Override
+          public void run() {
+            if (dialog.isShowing() && target.isReachable()) {
+              showFor(dialog, target, listener);
+            }
+          }
+        });
+  }
+
   public static TapTargetView showFor(Dialog dialog, TapTarget target) {
     return showFor(dialog, target, null);
   }
 
   public static TapTargetView showFor(Dialog dialog, TapTarget target, Listener listener) {
+    return showFor(dialog, target, listener, null, null);
+  }
+
+  static TapTargetView showFor(Dialog dialog, TapTarget target, Listener listener,
+                               @Nullable TapTargetTiming defaultTiming,
+                               @Nullable TapTargetTheme defaultTheme) {
     if (dialog == null) throw new IllegalArgumentException("Dialog is null");
+    requireReachable(target);
 
     final Context context = dialog.getContext();
     final WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
@@ -189,12 +373,49 @@ public class TapTargetView extends View {
     params.width = WindowManager.LayoutParams.MATCH_PARENT;
     params.height = WindowManager.LayoutParams.MATCH_PARENT;
 
-    final TapTargetView tapTargetView = new TapTargetView(context, windowManager, null, target, listener);
+    final TapTargetView tapTargetView = new TapTargetView(context, windowManager, null, target, listener,
+        defaultTiming, defaultTheme);
     windowManager.addView(tapTargetView, params);
 
     return tapTargetView;
   }
 
+  /**
+   * Shows the given target as saved in {@code state}, re-attaching it fully expanded if it was
+   * expanded when the state was saved. If the state was saved for a target with a different id,
+   * the given target is shown normally instead.
+   *
+   * @return The shown view, or {@code null} if no target was showing when the state was saved
+   */
+  @Nullable
+  public static TapTargetView restoreFor(Activity activity, TapTarget target,
+                                         @Nullable TapTargetState state, Listener listener) {
+    if (state == null || !state.isShowing()) {
+      return null;
+    }
+
+    final TapTargetView tapTargetView = showFor(activity, target, listener);
+    if (state.targetId == target.id()) {
+      tapTargetView.restoreState(state);
+    }
+    return tapTargetView;
+  }
+
+  /** @see #restoreFor(Activity, TapTarget, TapTargetState, Listener) **/
+  @Nullable
+  public static TapTargetView restoreFor(Dialog dialog, TapTarget target,
+                                         @Nullable TapTargetState state, Listener listener) {
+    if (state == null || !state.isShowing()) {
+      return null;
+    }
+
+    final TapTargetView tapTargetView = showFor(dialog, target, listener);
+    if (state.targetId == target.id()) {
+      tapTargetView.restoreState(state);
+    }
+    return tapTargetView;
+  }
+
   public static class Listener {
     /** Signals that the user has clicked inside of the target **/
     public void onTargetClick(TapTargetView view) {
@@ -222,6 +443,15 @@ public class TapTargetView extends View {
      */
     public void onTargetDismissed(TapTargetView view, boolean userInitiated) {
     }
+
+    /**
+     * Reports how long it took for the tap target to show, measured from the creation of the
+     * view. Not called if the target is dismissed before it is fully expanded.
+     * @param firstFrameMillis Time until the first frame of the target was drawn
+     * @param expandedMillis Time until the target was fully expanded
+     */
+    public void onTargetShowTimings(TapTargetView view, long firstFrameMillis, long expandedMillis) {
+    }
   }
 
   final FloatValueAnimatorBuilder.UpdateListener expandContractUpdateListener = new FloatValueAnimatorBuilder.UpdateListener() {
@@ -273,8 +503,7 @@ public class TapTargetView extends View {
       .onEnd(new FloatValueAnimatorBuilder.EndListener() {
         @Override
         public void onEnd() {
-          pulseAnimation.start();
-          isInteractable = true;
+          onExpandEnd();
         }
       })
       .build();
@@ -307,7 +536,20 @@ public class TapTargetView extends View {
       .onUpdate(new FloatValueAnimatorBuilder.UpdateListener() {
         @Override
         public void onUpdate(float lerpTime) {
-          expandContractUpdateListener.onUpdate(lerpTime);
+          // Like the confirmation, every property contracts from its value at the time of the
+          // dismissal, which may have been in the middle of the expand animation. The old drawing
+          // bounds are invalidated, as they are larger than the new ones
+          calculateDrawingBounds();
+          final float alphaLerp = Math.min(1.0f, lerpTime * 1.5f);
+          outerCircleRadius = dismissStartOuterCircleRadius * lerpTime;
+          outerCircleAlpha = (int) (alphaLerp * dismissStartOuterCircleAlpha);
+          outerCirclePath.reset();
+          outerCirclePath.addCircle(outerCircleCenter[0], outerCircleCenter[1], outerCircleRadius, Path.Direction.CW);
+          targetCircleRadius = dismissStartTargetCircleRadius * lerpTime;
+          targetCircleAlpha = (int) (alphaLerp * dismissStartTargetCircleAlpha);
+          targetCirclePulseRadius = dismissStartTargetCirclePulseRadius * lerpTime;
+          textAlpha = (int) (delayedLerp(lerpTime, 0.7f) * dismissStartTextAlpha);
+          invalidateViewAndOutline(drawingBounds);
         }
       })
       .onEnd(new FloatValueAnimatorBuilder.EndListener() {
@@ -318,22 +560,26 @@ public class TapTargetView extends View {
       })
       .build();
 
-  private final ValueAnimator dismissConfirmAnimation = new FloatValueAnimatorBuilder()
+  final ValueAnimator dismissConfirmAnimation = new FloatValueAnimatorBuilder()
       .duration(250)
       .interpolator(new AccelerateDecelerateInterpolator())
       .onUpdate(new FloatValueAnimatorBuilder.UpdateListener() {
         @Override
         public void onUpdate(float lerpTime) {
+          // Every property animates from its value at the time of the tap, which may have been
+          // in the middle of the expand animation
           final float spedUpLerp = Math.min(1.0f, lerpTime * 2.0f);
-          outerCircleRadius = calculatedOuterCircleRadius * (1.0f + (spedUpLerp * 0.2f));
-          outerCircleAlpha = (int) ((1.0f - spedUpLerp) * target.outerCircleAlpha * 255.0f);
+          final float finalOuterCircleRadius = calculatedOuterCircleRadius * 1.2f;
+          outerCircleRadius = dismissStartOuterCircleRadius
+              + (finalOuterCircleRadius - dismissStartOuterCircleRadius) * spedUpLerp;
+          outerCircleAlpha = (int) ((1.0f - spedUpLerp) * dismissStartOuterCircleAlpha);
           outerCirclePath.reset();
           outerCirclePath.addCircle(outerCircleCenter[0], outerCircleCenter[1], outerCircleRadius, Path.Direction.CW);
-          targetCircleRadius = (1.0f - lerpTime) * TARGET_RADIUS;
-          targetCircleAlpha = (int) ((1.0f - lerpTime) * 255.0f);
+          targetCircleRadius = (1.0f - lerpTime) * dismissStartTargetCircleRadius;
+          targetCircleAlpha = (int) ((1.0f - lerpTime) * dismissStartTargetCircleAlpha);
           targetCirclePulseRadius = (1.0f + lerpTime) * TARGET_RADIUS;
           targetCirclePulseAlpha = (int) ((1.0f - lerpTime) * targetCirclePulseAlpha);
-          textAlpha = (int) ((1.0f - spedUpLerp) * 255.0f);
+          textAlpha = (int) ((1.0f - spedUpLerp) * dismissStartTextAlpha);
           calculateDrawingBounds();
           invalidateViewAndOutline(drawingBounds);
         }
@@ -346,11 +592,60 @@ public class TapTargetView extends View {
       })
       .build();
 
+  // Icons loaded in the background fade in once they are ready, see TapTarget#icon(int)
+  float iconAlpha = 1.0f;
+
+  final ValueAnimator iconFadeAnimation = new FloatValueAnimatorBuilder()
+      .duration(150)
+      .onUpdate(new FloatValueAnimatorBuilder.UpdateListener() {
+        @Override
+        public void onUpdate(float lerpTime) {
+          iconAlpha = lerpTime;
+          invalidate();
+        }
+      })
+      .build();
+
   private ValueAnimator[] animators = new ValueAnimator[]
-      {expandAnimation, pulseAnimation, dismissConfirmAnimation, dismissAnimation};
+      {expandAnimation, pulseAnimation, dismissConfirmAnimation, dismissAnimation, iconFadeAnimation};
+
+  // When the pulse runs at a reduced frame rate, we step the pulse animator ourselves so that no
+  // frames are requested in between, see TapTarget#pulseFrameRate
+  long pulseFrameInterval;
+  long pulseStartTime;
+
+  final Runnable pulseFrame = new Runnable() {
+    @Override
+    public void run() {
+      if (isDismissing || isDismissed) {
+        return;
+      }
+
+      final long elapsed = SystemClock.uptimeMillis() - pulseStartTime;
+      pulseAnimation.setCurrentPlayTime(elapsed % pulseAnimation.getDuration());
+      postOnAnimationDelayed(this, pulseFrameInterval);
+    }
+  };
 
   private final ViewTreeObserver.OnGlobalLayoutListener globalLayoutListener;
 
+  private final ViewTreeObserver.OnPreDrawListener targetTracker = new ViewTreeObserver.OnPreDrawListener() {
+    @Override
+    public boolean onPreDraw() {
+      if (outerCircleCenter == null || isDismissing || !target.refreshBounds()) {
+        return true;
+      }
+
+      final Rect bounds = target.bounds();
+      final int dx = bounds.left - screenOffset[0] - targetBounds.left;
+      final int dy = bounds.top - screenOffset[1] - targetBounds.top;
+      if (dx != 0 || dy != 0) {
+        translateTarget(dx, dy);
+      }
+      return true;
+    }
+  };
+
   /**
    * This constructor should only be used directly for very specific use cases not covered by
    * the static factory methods.
@@ -371,15 +666,33 @@ public class TapTargetView extends View {
                        @Nullable final ViewGroup boundingParent,
                        final TapTarget target,
                        @Nullable final Listener userListener) {
+    this(context, parent, boundingParent, target, userListener, null, null);
+  }
+
+  /**
+   * @param defaultTiming The timing to use if the target doesn't specify one
+   * @param defaultTheme The theme to use if the target doesn't specify one
+   */
+  TapTargetView(final Context context,
+                final ViewManager parent,
+                @Nullable final ViewGroup boundingParent,
+                final TapTarget target,
+                @Nullable final Listener userListener,
+                @Nullable final TapTargetTiming defaultTiming,
+                @Nullable final TapTargetTheme defaultTheme) {
     super(context);
     if (target == null) throw new IllegalArgumentException("Target cannot be null");
 
+    this.showStartTime = SystemClock.uptimeMillis();
+    this.defaultTiming = defaultTiming;
+    this.defaultTheme = defaultTheme;
     this.target = target;
     this.parent = parent;
     this.boundingParent = boundingParent;
     this.listener = userListener != null ? userListener : new Listener();
     this.title = target.title;
     this.description = target.description;
+    TapTargetMemory.getInstance().track(context, this);
 
     TARGET_PADDING = UiUtil.dp(context, 20);
     CIRCLE_PADDING = UiUtil.dp(context, 40);
@@ -395,6 +708,7 @@ public class TapTargetView extends View {
     TARGET_PULSE_RADIUS = (int) (0.1f * TARGET_RADIUS);
 
     outerCirclePath = new Path();
+    targetCirclePath = new Path();
     targetBounds = new Rect();
     drawingBounds = new Rect();
 
@@ -427,8 +741,8 @@ public class TapTargetView extends View {
     targetCirclePulsePaint.setAntiAlias(true);
 
     applyTargetOptions(context);
+    loadIcon();
 
-    final boolean layoutNoLimits;
     if (context instanceof Activity) {
       Activity activity = (Activity) context;
       final int flags = activity.getWindow().getAttributes().flags;
@@ -447,14 +761,15 @@ public class TapTargetView extends View {
         target.onReady(new Runnable() {
           @Override
           public void run() {
-            final int[] offset = new int[2];
-
             targetBounds.set(target.bounds());
 
-            getLocationOnScreen(offset);
-            targetBounds.offset(-offset[0], -offset[1]);
+            getLocationOnScreen(screenOffset);
+            targetBounds.offset(-screenOffset[0], -screenOffset[1]);
 
-            if (boundingParent != null) {
+            if (lastInsets != null) {
+              updateBoundaries();
+            } else if (boundingParent != null) {
+              // Insets have not been dispatched to us (yet), so we query the display instead
               final WindowManager windowManager
                   = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
               final DisplayMetrics displayMetrics = new DisplayMetrics();
@@ -486,6 +801,9 @@ public class TapTargetView extends View {
 
             drawTintedTarget();
             requestFocus();
+            if (target.autoFitText) {
+              fitTextLayouts();
+            }
             calculateDimensions();
 
             startExpandAnimation();
@@ -495,6 +813,27 @@ public class TapTargetView extends View {
     };
 
     getViewTreeObserver().addOnGlobalLayoutListener(globalLayoutListener);
+    if (boundingParent != null) {
+      ViewCompat.setOnApplyWindowInsetsListener(this, new OnApplyWindowInsetsListener() {
+        @Override
+        public WindowInsetsCompat onApplyWindowInsets(View v, WindowInsetsCompat insets) {
+          onInsetsChanged(insets);
+          return insets;
+        }
+      });
+      ViewCompat.setWindowInsetsAnimationCallback(this, new WindowInsetsAnimationCompat.Callback(
+          WindowInsetsAnimationCompat.Callback.DISPATCH_MODE_CONTINUE_ON_SUBTREE) {
+        @Override
+        public WindowInsetsCompat onProgress(WindowInsetsCompat insets,
+                                             List<WindowInsetsAnimationCompat> runningAnimations) {
+          onInsetsChanged(insets);
+          return insets;
+        }
+      });
+    }
+    if (target.trackTarget) {
+      getViewTreeObserver().addOnPreDrawListener(targetTracker);
+    }
 
     setFocusableInTouchMode(true);
     setClickable(true);
@@ -503,11 +842,14 @@ public class TapTargetView extends View {
       public void onClick(View v) {
         if (listener == null || outerCircleCenter == null || !isInteractable) return;
 
+        // While still expanding, taps are tested against the fully expanded circles
         final boolean clickedInTarget =
-            distance(targetBounds.centerX(), targetBounds.centerY(), (int) lastTouchX, (int) lastTouchY) <= targetCircleRadius;
+            distance(targetBounds.centerX(), targetBounds.centerY(), (int) lastTouchX, (int) lastTouchY)
+                <= Math.max(targetCircleRadius, TARGET_RADIUS);
         final double distanceToOuterCircleCenter = distance(outerCircleCenter[0], outerCircleCenter[1],
             (int) lastTouchX, (int) lastTouchY);
-        final boolean clickedInsideOfOuterCircle = distanceToOuterCircleCenter <= outerCircleRadius;
+        final boolean clickedInsideOfOuterCircle =
+            distanceToOuterCircleCenter <= Math.max(outerCircleRadius, calculatedOuterCircleRadius);
 
         if (clickedInTarget) {
           isInteractable = false;
@@ -536,22 +878,218 @@ public class TapTargetView extends View {
     });
   }
 
+  void onInsetsChanged(WindowInsetsCompat insets) {
+    lastInsets = insets;
+    updateBoundaries();
+
+    if (outerCircleCenter != null && !isDismissing) {
+      calculateDimensions();
+      calculateDrawingBounds();
+      invalidateViewAndOutline(drawingBounds);
+    }
+  }
+
+  /** Derives the top and bottom boundaries from the last dispatched window insets **/
+  void updateBoundaries() {
+    if (boundingParent == null || lastInsets == null) {
+      return;
+    }
+
+    final Insets visibleInsets = lastInsets.getInsets(
+        WindowInsetsCompat.Type.systemBars() | WindowInsetsCompat.Type.ime());
+    boundingParent.getLocationInWindow(boundingParentLocation);
+
+    int top = visibleInsets.top;
+    int bottom = getHeight() - visibleInsets.bottom;
+    visibleTop = top;
+
+    final boolean canDrawBehindSystemBars = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    if (target.drawBehindStatusBar && canDrawBehindSystemBars) {
+      top = boundingParentLocation[1];
+    }
+    if (target.drawBehindNavigationBar && canDrawBehindSystemBars) {
+      bottom = boundingParentLocation[1] + boundingParent.getHeight();
+    }
+
+    // We bound the boundaries to be within the screen's coordinates to
+    // handle the case where the flag FLAG_LAYOUT_NO_LIMITS is set
+    if (layoutNoLimits) {
+      top = Math.max(0, top);
+      bottom = Math.min(bottom, getResources().getDisplayMetrics().heightPixels);
+    }
+
+    topBoundary = top;
+    bottomBoundary = bottom;
+  }
+
   private void startExpandAnimation() {
     if (!visible) {
-      isInteractable = false;
-      expandAnimation.start();
+      // Input is accepted while expanding, a tap on the target redirects into the dismissal
+      if (showInstantly) {
+        visible = true;
+        expandContractUpdateListener.onUpdate(1.0f);
+        onExpandEnd();
+        return;
+      } else if (canUseRenderThreadAnimations()) {
+        startRenderThreadExpand();
+      } else {
+        expandAnimation.start();
+      }
       visible = true;
     }
   }
 
+  void onExpandEnd() {
+    if (isDismissing || isDismissed) {
+      // The expand was interrupted by a dismissal, canceling it ends up here as well
+      return;
+    }
+    if (!animationsDisabled) {
+      startPulseAnimation();
+    }
+    isInteractable = true;
+
+    if (listener != null) {
+      final long now = SystemClock.uptimeMillis();
+      final long firstFrame = firstFrameTime > 0 ? firstFrameTime : now;
+      listener.onTargetShowTimings(this, firstFrame - showStartTime, now - showStartTime);
+    }
+  }
+
+  void startPulseAnimation() {
+    if (pulseFrameInterval > 0) {
+      pulseStartTime = SystemClock.uptimeMillis();
+      removeCallbacks(pulseFrame);
+      postOnAnimation(pulseFrame);
+    } else {
+      pulseAnimation.start();
+    }
+  }
+
+  void stopPulseAnimation() {
+    removeCallbacks(pulseFrame);
+    pulseAnimation.cancel();
+  }
+
+  boolean canUseRenderThreadAnimations() {
+    return target.renderThreadAnimations && Build.VERSION.SDK_INT >= 21 && isHardwareAccelerated();
+  }
+
+  /**
+   * Draws the fully expanded state once and reveals it with a circular reveal, which is run by
+   * the RenderThread and keeps going even if the main thread is busy.
+   */
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  void startRenderThreadExpand() {
+    // RenderNodeAnimator waits out the start delay of view animations on the main thread, so the
+    // delay is made part of the animation itself instead, holding the reveal at nothing until then
+    final long delay = expandAnimation.getStartDelay();
+    final long duration = expandAnimation.getDuration();
+    revealStartTime = SystemClock.uptimeMillis() + delay;
+
+    expandContractUpdateListener.onUpdate(1.0f);
+    revealRadius = maxDistanceToPoints(outerCircleCenter[0], outerCircleCenter[1],
+        new Rect(0, 0, getWidth(), getHeight()));
+    final Animator reveal = ViewAnimationUtils.createCircularReveal(this,
+        outerCircleCenter[0], outerCircleCenter[1], 0, revealRadius);
+    reveal.setDuration(delay + duration);
+    reveal.setInterpolator(new DelayedInterpolator(
+        delay / (float) Math.max(1, delay + duration), expandAnimation.getInterpolator()));
+    reveal.addListener(new AnimatorListenerAdapter() {
+      @Override
+      public void onAnimationEnd(Animator animation) {
+        if (renderThreadAnimator == animation) {
+          renderThreadAnimator = null;
+          onExpandEnd();
+        }
+      }
+    });
+    renderThreadAnimator = reveal;
+    reveal.start();
+  }
+
+  /**
+   * Dismisses via a circular conceal run by the RenderThread: into the outer circle's center when
+   * canceled, and into the target when the target was tapped.
+   */
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  void startRenderThreadDismiss(boolean tappedTarget) {
+    final int centerX = tappedTarget ? targetBounds.centerX() : outerCircleCenter[0];
+    final int centerY = tappedTarget ? targetBounds.centerY() : outerCircleCenter[1];
+
+    // The conceal has to start out covering everything that has been revealed so far
+    float startRadius = currentRevealRadius();
+    if (tappedTarget) {
+      startRadius = (float) Math.min(
+          maxDistanceToPoints(centerX, centerY, new Rect(0, 0, getWidth(), getHeight())),
+          distance(centerX, centerY, outerCircleCenter[0], outerCircleCenter[1]) + startRadius);
+    }
+
+    final ValueAnimator template = tappedTarget ? dismissConfirmAnimation : dismissAnimation;
+    final Animator conceal = ViewAnimationUtils.createCircularReveal(this,
+        centerX, centerY, startRadius, 0);
+    conceal.setDuration(template.getDuration());
+    conceal.setInterpolator(template.getInterpolator());
+    conceal.addListener(new AnimatorListenerAdapter() {
+      @Override
+      public void onAnimationEnd(Animator animation) {
+        if (renderThreadAnimator == animation) {
+          renderThreadAnimator = null;
+          finishDismiss(true);
+        }
+      }
+    });
+    renderThreadAnimator = conceal;
+    conceal.start();
+  }
+
+  /** Estimates the radius of an in-flight reveal, as its value lives on the RenderThread **/
+  float currentRevealRadius() {
+    if (renderThreadAnimator == null) {
+      return revealRadius;
+    }
+
+    final long elapsed = SystemClock.uptimeMillis() - revealStartTime;
+    final float fraction = Math.max(0.0f, Math.min(1.0f,
+        elapsed / (float) Math.max(1, expandAnimation.getDuration())));
+    final TimeInterpolator interpolator = expandAnimation.getInterpolator();
+    return revealRadius * (interpolator != null ? interpolator.getInterpolation(fraction) : fraction);
+  }
+
+  void cancelRenderThreadAnimations() {
+    final Animator animator = renderThreadAnimator;
+    renderThreadAnimator = null;
+    if (animator != null) {
+      animator.cancel();
+    }
+  }
+
   protected void applyTargetOptions(Context context) {
     shouldTintTarget = !target.transparentTarget && target.tintTarget;
     shouldDrawShadow = target.drawShadow;
     cancelable = target.cancelable;
+    pulseFrameInterval = target.pulseFrameRate > 0 ? (long) (1000 / target.pulseFrameRate) : 0;
+
+    final TapTargetTiming timing = timing();
+    animationsDisabled = UiUtil.animatorDurationScale(context) == 0.0f;
+    showInstantly = timing.instant || animationsDisabled;
+    expandAnimation.setStartDelay(timing.startDelay);
+    expandAnimation.setDuration(timing.expandDuration);
+    expandAnimation.setInterpolator(timing.interpolator);
+    pulseAnimation.setDuration(timing.pulseDuration);
+    dismissAnimation.setDuration(timing.dismissDuration);
+    dismissAnimation.setInterpolator(timing.interpolator);
+    dismissConfirmAnimation.setDuration(timing.dismissDuration);
+    dismissConfirmAnimation.setInterpolator(timing.interpolator);
 
     // We can't clip out portions of a view outline, so if the user specified a transparent
     // target, we need to fallback to drawing a jittered shadow approximation
-    if (shouldDrawShadow && Build.VERSION.SDK_INT >= 21 && !target.transparentTarget) {
+    final OuterCircleNode previousNode = outerCircleNode;
+    outerCircleNode = null;
+    if (shouldDrawShadow && Build.VERSION.SDK_INT >= 29 && !target.transparentTarget) {
+      // The circle gets its own render node so that its shadow is only computed once per show
+      outerCircleNode = previousNode != null ? previousNode : new OuterCircleNode(SHADOW_DIM, SHADOW_DIM);
+    } else if (shouldDrawShadow && Build.VERSION.SDK_INT >= 21 && !target.transparentTarget) {
       outlineProvider = new ViewOutlineProvider() {
         @TargetApi(Build.VERSION_CODES.LOLLIPOP)
         @Override
@@ -571,10 +1109,21 @@ public class TapTargetView extends View {
       setElevation(SHADOW_DIM);
     }
 
-    if (shouldDrawShadow && outlineProvider == null && Build.VERSION.SDK_INT < 18) {
+    // We draw directly into the window rather than into a full screen hardware layer, which would
+    // be re-rendered on every pulse frame anyway. Hardware canvases only support clipPath from
+    // API 18 on, so older devices need a software layer if we have to clip
+    final boolean needsClipPath = target.transparentTarget || (shouldDrawShadow && outlineProvider == null);
+    if (needsClipPath && Build.VERSION.SDK_INT < 18) {
       setLayerType(LAYER_TYPE_SOFTWARE, null);
     } else {
-      setLayerType(LAYER_TYPE_HARDWARE, null);
+      setLayerType(LAYER_TYPE_NONE, null);
+    }
+
+    final TapTargetTheme targetTheme = theme();
+    if (targetTheme != null) {
+      // Colors, text sizes and typefaces have all been resolved by the theme already
+      applyTheme(targetTheme);
+      return;
     }
 
     final Resources.Theme theme = context.getTheme();
@@ -596,10 +1145,6 @@ public class TapTargetView extends View {
       targetCirclePaint.setColor(isDark ? Color.BLACK : Color.WHITE);
     }
 
-    if (target.transparentTarget) {
-      targetCirclePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
-    }
-
     targetCirclePulsePaint.setColor(targetCirclePaint.getColor());
 
     final Integer targetDimColor = target.dimColorInt(context);
@@ -632,6 +1177,28 @@ public class TapTargetView extends View {
     }
   }
 
+  TapTargetTiming timing() {
+    if (target.timing != null) {
+      return target.timing;
+    }
+    return defaultTiming != null ? defaultTiming : TapTargetTiming.DEFAULT;
+  }
+
+  @Nullable
+  TapTargetTheme theme() {
+    return target.theme != null ? target.theme : defaultTheme;
+  }
+
+  void applyTheme(TapTargetTheme theme) {
+    isDark = theme.isDark;
+    dimColor = theme.dimColor;
+    titlePaint.set(theme.titlePaint);
+    descriptionPaint.set(theme.descriptionPaint);
+    outerCirclePaint.set(theme.outerCirclePaint);
+    targetCirclePaint.set(theme.targetCirclePaint);
+    targetCirclePulsePaint.set(theme.targetCirclePulsePaint);
+  }
+
   @Override
   protected void onDetachedFromWindow() {
     super.onDetachedFromWindow();
@@ -644,42 +1211,204 @@ public class TapTargetView extends View {
     isDismissing = false;
     isDismissed = true;
 
+    // The update listeners stay registered, a rebound view animates through the same animators
     for (final ValueAnimator animator : animators) {
       animator.cancel();
-      animator.removeAllUpdateListeners();
     }
+    removeCallbacks(pulseFrame);
+    cancelRenderThreadAnimations();
 
     ViewUtil.removeOnGlobalLayoutListener(getViewTreeObserver(), globalLayoutListener);
+    getViewTreeObserver().removeOnPreDrawListener(targetTracker);
     visible = false;
 
+    if (outerCircleNode != null) {
+      outerCircleNode.release();
+    }
+
+    if (boundLifecycle != null) {
+      boundLifecycle.removeObserver(lifecycleObserver);
+      boundLifecycle = null;
+    }
+
     if (listener != null) {
       listener.onTargetDismissed(this, userInitiated);
     }
   }
 
+  /**
+   * Binds this view to the given lifecycle: animations are paused while the owner is stopped,
+   * and the view is dismissed without animation once the owner is destroyed. Binding to an owner
+   * that is already destroyed dismisses the view right away.
+   */
+  public TapTargetView bindToLifecycle(LifecycleOwner owner) {
+    if (owner == null) throw new IllegalArgumentException("Given null LifecycleOwner");
+    if (boundLifecycle != null) {
+      boundLifecycle.removeObserver(lifecycleObserver);
+      boundLifecycle = null;
+    }
+    if (isDismissed) {
+      return this;
+    }
+
+    // A destroyed lifecycle doesn't dispatch any more events, so we wouldn't hear about it
+    if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+      dismissImmediately();
+      return this;
+    }
+
+    boundLifecycle = owner.getLifecycle();
+    boundLifecycle.addObserver(lifecycleObserver);
+    return this;
+  }
+
+  void onHostStop() {
+    if (hostStopped || isDismissed) return;
+    hostStopped = true;
+
+    stopPulseAnimation();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && expandAnimation.isStarted()) {
+      expandAnimation.pause();
+    }
+
+    // Nobody is going to see the rest of a dismissal, so it is finished right away
+    if (dismissAnimation.isStarted()) {
+      dismissAnimation.end();
+    }
+    if (dismissConfirmAnimation.isStarted()) {
+      dismissConfirmAnimation.end();
+    }
+    if (isDismissing && renderThreadAnimator != null) {
+      renderThreadAnimator.end();
+    }
+
+    // Both are re-created when the host is started again
+    if (outerCircleNode != null) {
+      outerCircleNode.release();
+    }
+    tintedTarget = null;
+  }
+
+  void onHostStart() {
+    if (!hostStopped || isDismissed) return;
+    hostStopped = false;
+
+    drawTintedTarget();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && expandAnimation.isPaused()) {
+      expandAnimation.resume();
+    } else if (visible && !isDismissing && !animationsDisabled && !expandAnimation.isStarted()
+        && renderThreadAnimator == null) {
+      startPulseAnimation();
+    }
+    invalidate();
+  }
+
+  /**
+   * Dismisses this view without animation and drops its references to the target, listener and
+   * any bitmaps, e.g. when the host is being destroyed
+   */
+  public void dismissImmediately() {
+    if (!isDismissed) {
+      isDismissing = true;
+      stopPulseAnimation();
+      expandAnimation.cancel();
+      finishDismiss(false);
+    }
+
+    tintedTarget = null;
+    listener = null;
+  }
+
+  /**
+   * Frees everything that is re-created once this view is shown again, see
+   * {@link TapTargetMemory}. Must only be called while the view isn't visible.
+   *
+   * @param liveTargets The targets of views that aren't dismissed, their snapshots are kept
+   * @return The size of the dropped bitmaps in bytes
+   */
+  long trimMemory(Set<TapTarget> liveTargets) {
+    long bytes = 0;
+    if (outerCircleNode != null) {
+      outerCircleNode.release();
+    }
+
+    // Views that are still showing re-draw the tinted target once their host is started again
+    if (tintedTarget != null && (isDismissed || hostStopped)) {
+      bytes += tintedTarget.getByteCount();
+      tintedTarget = null;
+    }
+
+    if (isDismissed) {
+      titleLayout = null;
+      descriptionLayout = null;
+      // Rebinding the view sets the layer type up again
+      setLayerType(LAYER_TYPE_NONE, null);
+      // The same target may be showing in another view by now
+      if (target instanceof ViewTapTarget && !liveTargets.contains(target)) {
+        bytes += ((ViewTapTarget) target).releaseSnapshot();
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Makes this visible view draw its outer circle directly instead of through a render node
+   *
+   * @return Whether there was a render node to give up
+   */
+  boolean downgrade() {
+    if (outerCircleNode == null) {
+      return false;
+    }
+
+    outerCircleNode.release();
+    outerCircleNode = null;
+    invalidate();
+    return true;
+  }
+
   @Override
   protected void onDraw(Canvas c) {
     if (isDismissed || outerCircleCenter == null) return;
 
+    if (firstFrameTime == 0) {
+      firstFrameTime = SystemClock.uptimeMillis();
+    }
+
     if (topBoundary > 0 && bottomBoundary > 0) {
       c.clipRect(0, topBoundary, getWidth(), bottomBoundary);
     }
 
+    int targetSaveCount = 0;
+    if (target.transparentTarget) {
+      // Instead of clearing the target out of an offscreen layer, we never draw into it
+      targetSaveCount = c.save();
+      targetCirclePath.reset();
+      targetCirclePath.addCircle(targetBounds.centerX(), targetBounds.centerY(),
+          targetCircleRadius, Path.Direction.CW);
+      c.clipPath(targetCirclePath, Region.Op.DIFFERENCE);
+    }
+
     if (dimColor != -1) {
       c.drawColor(dimColor);
     }
 
     int saveCount;
     outerCirclePaint.setAlpha(outerCircleAlpha);
-    if (shouldDrawShadow && outlineProvider == null) {
-      saveCount = c.save();
-      {
-        c.clipPath(outerCirclePath, Region.Op.DIFFERENCE);
-        drawJitteredShadow(c);
+    final boolean drewOuterCircleNode = outerCircleNode != null
+        && outerCircleNode.draw(c, outerCircleCenter, calculatedOuterCircleRadius,
+            outerCircleRadius, outerCircleAlpha, outerCirclePaint.getColor());
+    if (!drewOuterCircleNode) {
+      if (shouldDrawShadow && outlineProvider == null) {
+        saveCount = c.save();
+        {
+          c.clipPath(outerCirclePath, Region.Op.DIFFERENCE);
+          drawJitteredShadow(c);
+        }
+        c.restoreToCount(saveCount);
       }
-      c.restoreToCount(saveCount);
+      c.drawCircle(outerCircleCenter[0], outerCircleCenter[1], outerCircleRadius, outerCirclePaint);
     }
-    c.drawCircle(outerCircleCenter[0], outerCircleCenter[1], outerCircleRadius, outerCirclePaint);
 
     targetCirclePaint.setAlpha(targetCircleAlpha);
     if (targetCirclePulseAlpha > 0) {
@@ -687,8 +1416,12 @@ public class TapTargetView extends View {
       c.drawCircle(targetBounds.centerX(), targetBounds.centerY(),
           targetCirclePulseRadius, targetCirclePulsePaint);
     }
-    c.drawCircle(targetBounds.centerX(), targetBounds.centerY(),
-        targetCircleRadius, targetCirclePaint);
+    if (target.transparentTarget) {
+      c.restoreToCount(targetSaveCount);
+    } else {
+      c.drawCircle(targetBounds.centerX(), targetBounds.centerY(),
+          targetCircleRadius, targetCirclePaint);
+    }
 
     saveCount = c.save();
     {
@@ -708,14 +1441,16 @@ public class TapTargetView extends View {
 
     saveCount = c.save();
     {
+      final int iconPaintAlpha = (int) (targetCirclePaint.getAlpha() * iconAlpha);
       if (tintedTarget != null) {
         c.translate(targetBounds.centerX() - tintedTarget.getWidth() / 2,
             targetBounds.centerY() - tintedTarget.getHeight() / 2);
+        targetCirclePaint.setAlpha(iconPaintAlpha);
         c.drawBitmap(tintedTarget, 0, 0, targetCirclePaint);
       } else if (target.icon != null) {
         c.translate(targetBounds.centerX() - target.icon.getBounds().width() / 2,
             targetBounds.centerY() - target.icon.getBounds().height() / 2);
-        target.icon.setAlpha(targetCirclePaint.getAlpha());
+        target.icon.setAlpha(iconPaintAlpha);
         target.icon.draw(c);
       }
     }
@@ -730,9 +1465,65 @@ public class TapTargetView extends View {
   public boolean onTouchEvent(MotionEvent e) {
     lastTouchX = e.getX();
     lastTouchY = e.getY();
+    if (target.passThroughTouches && dispatchPassThrough(e)) {
+      return true;
+    }
     return super.onTouchEvent(e);
   }
 
+  /**
+   * Forwards gestures starting inside the target circle to the targeted view, instead of handling
+   * them as a click on this view.
+   *
+   * @return Whether the event was forwarded
+   */
+  boolean dispatchPassThrough(MotionEvent e) {
+    final View touchTarget = target.touchTarget();
+    final int action = e.getActionMasked();
+    if (action == MotionEvent.ACTION_DOWN) {
+      passingThrough = touchTarget != null && outerCircleCenter != null && isInteractable
+          && isInTargetCircle(e.getX(), e.getY());
+      if (passingThrough) {
+        passThroughDownX = e.getX();
+        passThroughDownY = e.getY();
+        final int[] targetLocation = new int[2];
+        touchTarget.getLocationOnScreen(targetLocation);
+        getLocationOnScreen(passThroughOffset);
+        passThroughOffset[0] -= targetLocation[0];
+        passThroughOffset[1] -= targetLocation[1];
+      }
+    }
+
+    if (!passingThrough || touchTarget == null) {
+      return false;
+    }
+
+    final MotionEvent forwarded = MotionEvent.obtain(e);
+    forwarded.offsetLocation(passThroughOffset[0], passThroughOffset[1]);
+    touchTarget.dispatchTouchEvent(forwarded);
+    forwarded.recycle();
+
+    if (action == MotionEvent.ACTION_UP) {
+      passingThrough = false;
+      // Drags that leave the target or that the target view took as a scroll aren't clicks
+      final int touchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
+      final boolean isClick = isInTargetCircle(e.getX(), e.getY())
+          && Math.hypot(e.getX() - passThroughDownX, e.getY() - passThroughDownY) <= touchSlop;
+      if (isClick && listener != null && isInteractable) {
+        isInteractable = false;
+        listener.onTargetClick(this);
+      }
+    } else if (action == MotionEvent.ACTION_CANCEL) {
+      passingThrough = false;
+    }
+    return true;
+  }
+
+  boolean isInTargetCircle(float x, float y) {
+    return distance(targetBounds.centerX(), targetBounds.centerY(), (int) x, (int) y)
+        <= Math.max(targetCircleRadius, TARGET_RADIUS);
+  }
+
   @Override
   public boolean onKeyDown(int keyCode, KeyEvent event) {
     if (isVisible() && cancelable && keyCode == KeyEvent.KEYCODE_BACK) {
@@ -768,12 +1559,25 @@ public class TapTargetView extends View {
    */
   public void dismiss(boolean tappedTarget) {
     isDismissing = true;
-    pulseAnimation.cancel();
+    stopPulseAnimation();
     expandAnimation.cancel();
+    captureDismissStartState();
     if (!visible || outerCircleCenter == null) {
+      cancelRenderThreadAnimations();
       finishDismiss(tappedTarget);
       return;
     }
+    if (canUseRenderThreadAnimations()) {
+      // The conceal picks up from wherever the reveal is, so we measure it before canceling
+      revealRadius = (int) currentRevealRadius();
+      final Animator inFlight = renderThreadAnimator;
+      renderThreadAnimator = null;
+      if (inFlight != null) {
+        inFlight.cancel();
+      }
+      startRenderThreadDismiss(tappedTarget);
+      return;
+    }
     if (tappedTarget) {
       dismissConfirmAnimation.start();
     } else {
@@ -781,9 +1585,82 @@ public class TapTargetView extends View {
     }
   }
 
+  void captureDismissStartState() {
+    dismissStartOuterCircleRadius = outerCircleRadius;
+    dismissStartOuterCircleAlpha = outerCircleAlpha;
+    dismissStartTargetCircleRadius = targetCircleRadius;
+    dismissStartTargetCircleAlpha = targetCircleAlpha;
+    dismissStartTextAlpha = textAlpha;
+    dismissStartTargetCirclePulseRadius = targetCirclePulseRadius;
+  }
+
   private void finishDismiss(boolean userInitiated) {
     onDismiss(userInitiated);
     ViewUtil.removeView(parent, TapTargetView.this);
+    if (pool != null) {
+      pool.release(this);
+    }
+  }
+
+  /**
+   * Resets this dismissed view to show the given target, reusing its paints, paths and
+   * animators. The view must have been removed from its parent before it can be rebound.
+   */
+  public void rebind(TapTarget target, @Nullable Listener listener) {
+    if (target == null) throw new IllegalArgumentException("Target cannot be null");
+    if (!isDismissed || getParent() != null) {
+      throw new IllegalStateException("Only dismissed and detached views can be rebound");
+    }
+
+    final Context context = getContext();
+    this.target = target;
+    this.listener = listener != null ? listener : new Listener();
+    this.title = target.title;
+    this.description = target.description;
+    TARGET_RADIUS = UiUtil.dp(context, target.targetRadius);
+    TARGET_PULSE_RADIUS = (int) (0.1f * TARGET_RADIUS);
+
+    isDismissed = false;
+    isDismissing = false;
+    isInteractable = true;
+    visible = false;
+    hostStopped = false;
+    passingThrough = false;
+    showStartTime = SystemClock.uptimeMillis();
+    firstFrameTime = 0;
+    textLayoutNanos = 0;
+
+    outerCircleCenter = null;
+    outerCircleRadius = 0;
+    outerCircleAlpha = 0;
+    targetCircleRadius = 0;
+    targetCircleAlpha = 0;
+    targetCirclePulseRadius = 0;
+    targetCirclePulseAlpha = 0;
+    textAlpha = 0;
+    outerCirclePath.reset();
+    titleLayout = null;
+    descriptionLayout = null;
+    tintedTarget = null;
+
+    if (outlineProvider != null && Build.VERSION.SDK_INT >= 21) {
+      setOutlineProvider(ViewOutlineProvider.BACKGROUND);
+      setElevation(0);
+    }
+    outlineProvider = null;
+
+    titlePaint.setTextSize(target.titleTextSizePx(context));
+    titlePaint.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+    descriptionPaint.setTextSize(target.descriptionTextSizePx(context));
+    descriptionPaint.setTypeface(Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL));
+    outerCirclePaint.setAlpha((int) (target.outerCircleAlpha * 255.0f));
+    applyTargetOptions(context);
+    loadIcon();
+
+    getViewTreeObserver().addOnGlobalLayoutListener(globalLayoutListener);
+    if (target.trackTarget) {
+      getViewTreeObserver().addOnPreDrawListener(targetTracker);
+    }
   }
 
   /** Specify whether to draw a wireframe around the view, useful for debugging **/
@@ -799,6 +1676,38 @@ public class TapTargetView extends View {
     return !isDismissed && visible;
   }
 
+  boolean isDismissed() {
+    return isDismissed;
+  }
+
+  boolean isExpanded() {
+    return isVisible() && !isDismissing && !expandAnimation.isStarted()
+        && renderThreadAnimator == null;
+  }
+
+  /** Returns the state of this view, to be restored via {@link #restoreFor} **/
+  public TapTargetState saveState() {
+    final int phase;
+    if (isDismissing || isDismissed) {
+      phase = TapTargetState.PHASE_IDLE;
+    } else if (isExpanded()) {
+      phase = TapTargetState.PHASE_EXPANDED;
+    } else {
+      phase = TapTargetState.PHASE_EXPANDING;
+    }
+    return new TapTargetState(-1, target.id(), phase);
+  }
+
+  /**
+   * Applies the given state before this view has been laid out. Only the geometry is computed
+   * for the new size, an expanded target skips its expand animation.
+   */
+  void restoreState(TapTargetState state) {
+    if (state.isExpanded()) {
+      showInstantly = true;
+    }
+  }
+
   void drawJitteredShadow(Canvas c) {
     final float baseAlpha = 0.20f * outerCircleAlpha;
     outerCircleShadowPaint.setStyle(Paint.Style.FILL_AND_STROKE);
@@ -866,6 +1775,60 @@ public class TapTargetView extends View {
     c.restoreToCount(saveCount);
   }
 
+  /** Starts loading the target's icon in the background if it has not been loaded yet **/
+  void loadIcon() {
+    final TapTarget loadingTarget = target;
+    final IconSource source = loadingTarget.iconSource;
+    if (source == null || loadingTarget.icon != null) {
+      iconAlpha = 1.0f;
+      return;
+    }
+
+    iconAlpha = 0.0f;
+    source.load(getContext(), TARGET_RADIUS * 2, new IconLoadedCallback(this, loadingTarget, source));
+  }
+
+  void onIconLoaded(TapTarget loadingTarget) {
+    if (target != loadingTarget || isDismissed) {
+      return;
+    }
+
+    drawTintedTarget();
+    if (animationsDisabled || !visible) {
+      iconAlpha = 1.0f;
+      invalidate();
+    } else {
+      iconFadeAnimation.start();
+    }
+  }
+
+  /** Only weakly holds the view, so a dismissed view isn't kept alive by a pending decode **/
+  static class IconLoadedCallback implements IconSource.Callback {
+    private final WeakReference<TapTargetView> view;
+    private final TapTarget target;
+    private final IconSource source;
+
+    IconLoadedCallback(TapTargetView view, TapTarget target, IconSource source) {
+      this.view = new WeakReference<>(view);
+      this.target = target;
+      this.source = source;
+    }
+
+    @Override
+    public void onIconLoaded(@Nullable Drawable icon) {
+      if (icon == null || target.iconSource != source) {
+        return;
+      }
+
+      // Keep the icon around so that showing the target again doesn't decode it again
+      target.icon = icon;
+      final TapTargetView view = this.view.get();
+      if (view != null) {
+        view.onIconLoaded(target);
+      }
+    }
+  }
+
   void drawTintedTarget() {
     final Drawable icon = target.icon;
     if (!shouldTintTarget || icon == null) {
@@ -890,15 +1853,130 @@ public class TapTargetView extends View {
       return;
     }
 
-    titleLayout = new StaticLayout(title, titlePaint, textWidth,
-            Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+    final long start = System.nanoTime();
+    titleLayout = buildTextLayout(title, titlePaint, textWidth, target.titleMaxLines);
 
     if (description != null) {
-      descriptionLayout = new StaticLayout(description, descriptionPaint, textWidth,
-              Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+      descriptionLayout = buildTextLayout(description, descriptionPaint, textWidth,
+          target.descriptionMaxLines);
     } else {
       descriptionLayout = null;
     }
+    textLayoutNanos += System.nanoTime() - start;
+  }
+
+  /**
+   * Shrinks the title and description to the largest size whose layouts fit either above or
+   * below the target, keeping the ratio between both sizes.
+   */
+  void fitTextLayouts() {
+    final int textWidth = Math.min(getWidth(), TEXT_MAX_WIDTH) - TEXT_PADDING * 2;
+    if (textWidth <= 0 || bottomBoundary <= topBoundary) {
+      return;
+    }
+
+    final int textTop = lastInsets != null ? visibleTop + TEXT_SAFE_AREA_PADDING : topBoundary;
+    final int spaceAbove = targetBounds.centerY() - TARGET_RADIUS - TARGET_PADDING - textTop;
+    final int spaceBelow = bottomBoundary - targetBounds.centerY() - TARGET_RADIUS - TARGET_PADDING;
+    final int available = Math.max(spaceAbove, spaceBelow);
+
+    final Context context = getContext();
+    final int titleSize = target.titleTextSizePx(context);
+    final int descriptionSize = target.descriptionTextSizePx(context);
+    final TextPaint titleMeasurePaint = new TextPaint(titlePaint);
+    final TextPaint descriptionMeasurePaint = new TextPaint(descriptionPaint);
+
+    int fitted = titleSize;
+    if (measureTextHeight(titleMeasurePaint, descriptionMeasurePaint, textWidth, titleSize,
+        descriptionSize, titleSize) > available) {
+      // Binary search for the largest title size that fits, the smallest size is used even if
+      // it doesn't
+      int low = Math.min(target.autoFitMinTextSizePx(context), titleSize);
+      int high = titleSize - 1;
+      fitted = low;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (measureTextHeight(titleMeasurePaint, descriptionMeasurePaint, textWidth, titleSize,
+            descriptionSize, mid) <= available) {
+          fitted = mid;
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+    }
+
+    if (fitted != (int) titlePaint.getTextSize()) {
+      titlePaint.setTextSize(fitted);
+      descriptionPaint.setTextSize(scaledTextSize(descriptionSize, fitted, titleSize));
+      updateTextLayouts();
+    }
+  }
+
+  int measureTextHeight(TextPaint titleMeasurePaint, TextPaint descriptionMeasurePaint, int width,
+                        int titleSize, int descriptionSize, int size) {
+    titleMeasurePaint.setTextSize(size);
+    int height = measureTextHeight(title, titleMeasurePaint, width, target.titleMaxLines);
+    if (description != null) {
+      descriptionMeasurePaint.setTextSize(scaledTextSize(descriptionSize, size, titleSize));
+      height += measureTextHeight(description, descriptionMeasurePaint, width,
+          target.descriptionMaxLines);
+    }
+    return height + TEXT_SPACING;
+  }
+
+  int measureTextHeight(CharSequence text, TextPaint paint, int width, int maxLines) {
+    final TextMeasureCache.Key key = TextMeasureCache.key(text, paint, width, maxLines, target);
+    int height = TextMeasureCache.get(key);
+    if (height < 0) {
+      final long start = System.nanoTime();
+      height = buildTextLayout(text, paint, width, maxLines).getHeight();
+      textLayoutNanos += System.nanoTime() - start;
+      TextMeasureCache.put(key, height);
+    }
+    return height;
+  }
+
+  static int scaledTextSize(int size, int scaledReference, int reference) {
+    return Math.max(1, Math.round(size * (float) scaledReference / reference));
+  }
+
+  @SuppressWarnings("deprecation")
+  StaticLayout buildTextLayout(CharSequence text, TextPaint paint, int width, int maxLines) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+          .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+          .setLineSpacing(target.lineSpacingExtra, target.lineSpacingMultiplier)
+          .setIncludePad(false)
+          .setBreakStrategy(target.breakStrategy)
+          .setHyphenationFrequency(target.hyphenationFrequency)
+          .setMaxLines(maxLines)
+          .setEllipsize(target.ellipsize)
+          .setEllipsizedWidth(width)
+          .build();
+    }
+
+    final StaticLayout layout = new StaticLayout(text, paint, width,
+        Layout.Alignment.ALIGN_NORMAL, target.lineSpacingMultiplier, target.lineSpacingExtra, false);
+    if (layout.getLineCount() <= maxLines) {
+      return layout;
+    }
+
+    // The public constructor can't limit lines, so the text is cut off after the last line
+    // that fits and the ellipsis is applied to that line alone
+    final int lastLineStart = layout.getLineStart(maxLines - 1);
+    final CharSequence lastLine = target.ellipsize == null
+        ? text.subSequence(lastLineStart, layout.getLineEnd(maxLines - 1))
+        : TextUtils.ellipsize(text.subSequence(lastLineStart, text.length()), paint, width,
+            target.ellipsize);
+    final CharSequence truncated = TextUtils.concat(text.subSequence(0, lastLineStart), lastLine);
+    return new StaticLayout(truncated, paint, width,
+        Layout.Alignment.ALIGN_NORMAL, target.lineSpacingMultiplier, target.lineSpacingExtra, false);
+  }
+
+  /** Returns the total time spent laying out the title and description text of this target **/
+  public long getTextLayoutNanos() {
+    return textLayoutNanos;
   }
 
   float halfwayLerp(float lerp) {
@@ -923,6 +2001,25 @@ public class TapTargetView extends View {
     calculatedOuterCircleRadius = getOuterCircleRadius(outerCircleCenter[0], outerCircleCenter[1], textBounds, targetBounds);
   }
 
+  /**
+   * Moves the already calculated target, circle and text geometry by the given offset. Used when
+   * tracking a moving target so that no text layouts need to be rebuilt.
+   */
+  void translateTarget(int dx, int dy) {
+    targetBounds.offset(dx, dy);
+    textBounds.offset(dx, dy);
+    outerCircleCenter[0] += dx;
+    outerCircleCenter[1] += dy;
+    outerCirclePath.offset(dx, dy);
+    calculateDrawingBounds();
+
+    // The previous position needs to be redrawn as well, so we invalidate everything
+    invalidate();
+    if (outlineProvider != null && Build.VERSION.SDK_INT >= 21) {
+      invalidateOutline();
+    }
+  }
+
   void calculateDrawingBounds() {
     if (outerCircleCenter == null) {
       // Called dismiss before we got a chance to display the tap target
@@ -955,7 +2052,9 @@ public class TapTargetView extends View {
 
     final int possibleTop = targetBounds.centerY() - TARGET_RADIUS - TARGET_PADDING - totalTextHeight;
     final int top;
-    if (possibleTop > topBoundary) {
+    if (possibleTop > topBoundary && lastInsets != null) {
+      top = Math.max(possibleTop, visibleTop + TEXT_SAFE_AREA_PADDING);
+    } else if (possibleTop > topBoundary) {
       Rect textSafeArea = new Rect();
       getWindowVisibleDisplayFrame(textSafeArea);
       textSafeArea.inset(0, TEXT_SAFE_AREA_PADDING);
@@ -1042,4 +2141,26 @@ public class TapTargetView extends View {
       invalidateOutline();
     }
   }
+
+  /** Holds at the start for the given fraction of the animation, then plays the given interpolator **/
+  static class DelayedInterpolator implements TimeInterpolator {
+    private final float delayFraction;
+    @Nullable
+    private final TimeInterpolator interpolator;
+
+    DelayedInterpolator(float delayFraction, @Nullable TimeInterpolator interpolator) {
+      this.delayFraction = delayFraction;
+      this.interpolator = interpolator;
+    }
+
+    @Override
+    public float getInterpolation(float input) {
+      if (input <= delayFraction) {
+        return 0.0f;
+      }
+
+      final float fraction = (input - delayFraction) / (1.0f - delayFraction);
+      return interpolator != null ? interpolator.getInterpolation(fraction) : fraction;
+    }
+  }
 }
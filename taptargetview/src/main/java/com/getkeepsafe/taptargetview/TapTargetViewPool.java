@@ -0,0 +1,62 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.view.View;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Dismissed {@link TapTargetView}s of a single window, waiting to be rebound to a new target.
+ * The pool is stored as a tag on the window's decor view, so it goes away along with the window.
+ */
+class TapTargetViewPool {
+  private static final int MAX_SIZE = 2;
+
+  private final ArrayList<TapTargetView> views = new ArrayList<>(MAX_SIZE);
+
+  /** Returns the pool of the window the given decor view belongs to **/
+  static TapTargetViewPool of(View decor) {
+    TapTargetViewPool pool = (TapTargetViewPool) decor.getTag(R.id.tap_target_view_pool);
+    if (pool == null) {
+      pool = new TapTargetViewPool();
+      decor.setTag(R.id.tap_target_view_pool, pool);
+      TapTargetMemory.getInstance().track(pool);
+    }
+    return pool;
+  }
+
+  @Nullable
+  TapTargetView acquire() {
+    final int size = views.size();
+    return size > 0 ? views.remove(size - 1) : null;
+  }
+
+  void release(TapTargetView view) {
+    if (views.size() < MAX_SIZE && !views.contains(view)) {
+      views.add(view);
+    }
+  }
+
+  int size() {
+    return views.size();
+  }
+
+  void clear() {
+    views.clear();
+  }
+}
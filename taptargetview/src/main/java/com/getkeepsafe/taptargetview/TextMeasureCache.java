@@ -0,0 +1,160 @@
+/**
+ * Copyright 2016 Keepsafe Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.getkeepsafe.taptargetview;
+
+import android.annotation.SuppressLint;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.style.MetricAffectingSpan;
+import android.text.style.ParagraphStyle;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.core.util.ObjectsCompat;
+
+import java.util.Locale;
+
+/**
+ * Memoizes the heights of measured text layouts across tap targets, so that showing the same
+ * target again or after a configuration change doesn't lay its text out repeatedly.
+ */
+class TextMeasureCache {
+  private static final int MAX_ENTRIES = 128;
+
+  private static final LruCache<Key, Integer> heights = new LruCache<>(MAX_ENTRIES);
+
+  TextMeasureCache() {
+  }
+
+  /** Everything that determines the height of a text layout **/
+  static final class Key {
+    final String text;
+    @Nullable
+    final Typeface typeface;
+    final float textSize;
+    final float textScaleX;
+    final float textSkewX;
+    final float letterSpacing;
+    @Nullable
+    final String fontFeatureSettings;
+    @Nullable
+    final Locale textLocale;
+    final int paintFlags;
+    final int width;
+    final int maxLines;
+    final int breakStrategy;
+    final int hyphenationFrequency;
+    final float lineSpacingExtra;
+    final float lineSpacingMultiplier;
+    @Nullable
+    final TextUtils.TruncateAt ellipsize;
+    private final int hashCode;
+
+    @SuppressLint("NewApi")
+    Key(CharSequence text, TextPaint paint, int width, int maxLines, TapTarget target) {
+      this.text = text.toString();
+      this.typeface = paint.getTypeface();
+      this.textSize = paint.getTextSize();
+      this.textScaleX = paint.getTextScaleX();
+      this.textSkewX = paint.getTextSkewX();
+      this.letterSpacing = Build.VERSION.SDK_INT >= 21 ? paint.getLetterSpacing() : 0;
+      this.fontFeatureSettings = Build.VERSION.SDK_INT >= 21 ? paint.getFontFeatureSettings() : null;
+      this.textLocale = Build.VERSION.SDK_INT >= 17 ? paint.getTextLocale() : null;
+      this.paintFlags = paint.getFlags();
+      this.width = width;
+      this.maxLines = maxLines;
+      this.breakStrategy = target.breakStrategy;
+      this.hyphenationFrequency = target.hyphenationFrequency;
+      this.lineSpacingExtra = target.lineSpacingExtra;
+      this.lineSpacingMultiplier = target.lineSpacingMultiplier;
+      this.ellipsize = target.ellipsize;
+      this.hashCode = ObjectsCompat.hash(this.text, typeface, textSize, textScaleX, textSkewX,
+          letterSpacing, fontFeatureSettings, textLocale, paintFlags, width, maxLines,
+          breakStrategy, hyphenationFrequency, lineSpacingExtra, lineSpacingMultiplier, ellipsize);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      final Key other = (Key) o;
+      return hashCode == other.hashCode
+          && textSize == other.textSize
+          && textScaleX == other.textScaleX
+          && textSkewX == other.textSkewX
+          && letterSpacing == other.letterSpacing
+          && paintFlags == other.paintFlags
+          && width == other.width
+          && maxLines == other.maxLines
+          && breakStrategy == other.breakStrategy
+          && hyphenationFrequency == other.hyphenationFrequency
+          && lineSpacingExtra == other.lineSpacingExtra
+          && lineSpacingMultiplier == other.lineSpacingMultiplier
+          && ellipsize == other.ellipsize
+          && ObjectsCompat.equals(typeface, other.typeface)
+          && ObjectsCompat.equals(fontFeatureSettings, other.fontFeatureSettings)
+          && ObjectsCompat.equals(textLocale, other.textLocale)
+          && text.equals(other.text);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * Returns the key identifying a layout of the given text, paint and target options, or null if
+   * the text carries spans that change its metrics. Those can't be told apart by the string alone
+   * and are measured every time.
+   */
+  @Nullable
+  static Key key(CharSequence text, TextPaint paint, int width, int maxLines, TapTarget target) {
+    if (text instanceof Spanned && hasMetricAffectingSpans((Spanned) text)) {
+      return null;
+    }
+    return new Key(text, paint, width, maxLines, target);
+  }
+
+  static boolean hasMetricAffectingSpans(Spanned text) {
+    final int length = text.length();
+    return text.getSpans(0, length, MetricAffectingSpan.class).length > 0
+        || text.getSpans(0, length, ParagraphStyle.class).length > 0;
+  }
+
+  /** Returns the memoized height for the given key, or -1 if it wasn't measured yet **/
+  static int get(@Nullable Key key) {
+    if (key == null) return -1;
+    final Integer height = heights.get(key);
+    return height == null ? -1 : height;
+  }
+
+  static void put(@Nullable Key key, int height) {
+    if (key == null) return;
+    heights.put(key, height);
+  }
+
+  static int size() {
+    return heights.size();
+  }
+
+  static void clear() {
+    heights.evictAll();
+  }
+}
@@ -15,17 +15,41 @@
  */
 package com.getkeepsafe.taptargetview;
 
+import android.app.Activity;
+import android.content.ContentResolver;
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.content.res.Resources;
+import android.os.Build;
+import android.provider.Settings;
 
 import androidx.annotation.ColorRes;
 import androidx.annotation.DimenRes;
+import androidx.annotation.Nullable;
 import android.util.TypedValue;
 
 class UiUtil {
   UiUtil() {
   }
 
+  /** Returns whether the given activity is finishing or, where we can tell, already destroyed **/
+  static boolean isFinishing(Activity activity) {
+    return activity.isFinishing()
+        || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && activity.isDestroyed());
+  }
+
+  /** Returns the activity the given context belongs to, if any **/
+  @Nullable
+  static Activity activityOf(@Nullable Context context) {
+    while (context instanceof ContextWrapper) {
+      if (context instanceof Activity) {
+        return (Activity) context;
+      }
+      context = ((ContextWrapper) context).getBaseContext();
+    }
+    return null;
+  }
+
   /** Returns the given pixel value in dp **/
   static int dp(Context context, int val) {
     return (int) TypedValue.applyDimension(
@@ -57,6 +81,17 @@ class UiUtil {
     return value.data;
   }
 
+  /** Returns the system wide animator duration scale, where 0 means animations are turned off **/
+  @SuppressWarnings("deprecation")
+  static float animatorDurationScale(Context context) {
+    final ContentResolver resolver = context.getContentResolver();
+    if (Build.VERSION.SDK_INT >= 17) {
+      return Settings.Global.getFloat(resolver, Settings.Global.ANIMATOR_DURATION_SCALE, 1.0f);
+    }
+
+    return Settings.System.getFloat(resolver, Settings.System.ANIMATOR_DURATION_SCALE, 1.0f);
+  }
+
   /** Modifies the alpha value of the given ARGB color **/
   static int setAlpha(int argb, float alpha) {
     if (alpha > 1.0f) {
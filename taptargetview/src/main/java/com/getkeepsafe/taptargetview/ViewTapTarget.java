@@ -15,26 +15,35 @@
  */
 package com.getkeepsafe.taptargetview;
 
+import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
 import android.view.View;
 
 class ViewTapTarget extends TapTarget {
+  @Nullable
   final View view;
+  final int[] trackedLocation = new int[2];
+  // Whether the icon is a snapshot of the view that we took ourselves
+  boolean snapshotIcon;
 
-  ViewTapTarget(View view, CharSequence title, @Nullable CharSequence description) {
+  /** The view may be null for toolbar items that haven't been inflated, see {@link #isReachable()} **/
+  ViewTapTarget(@Nullable View view, CharSequence title, @Nullable CharSequence description) {
     super(title, description);
-    if (view == null) {
-      throw new IllegalArgumentException("Given null view to target");
-    }
     this.view = view;
   }
 
   @Override
   public void onReady(final Runnable runnable) {
+    final View view = this.view;
+    if (view == null) {
+      throw new IllegalStateException("Target view could not be found");
+    }
+
     ViewUtil.onLaidOut(view, new Runnable() {
       @Override
       public void run() {
@@ -44,16 +53,85 @@ class ViewTapTarget extends TapTarget {
         bounds = new Rect(location[0], location[1],
             location[0] + view.getWidth(), location[1] + view.getHeight());
 
-        if (icon == null && view.getWidth() > 0 && view.getHeight() > 0) {
+        if (icon == null && iconSource == null && view.getWidth() > 0 && view.getHeight() > 0) {
           final Bitmap viewBitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
           final Canvas canvas = new Canvas(viewBitmap);
           view.draw(canvas);
           icon = new BitmapDrawable(view.getContext().getResources(), viewBitmap);
           icon.setBounds(0, 0, icon.getIntrinsicWidth(), icon.getIntrinsicHeight());
+          snapshotIcon = true;
         }
 
         runnable.run();
       }
     });
   }
+
+  /**
+   * Drops the snapshot of the view, it is taken again the next time this target is shown
+   *
+   * @return The size of the dropped snapshot in bytes
+   */
+  long releaseSnapshot() {
+    if (!snapshotIcon || !(icon instanceof BitmapDrawable)) {
+      return 0;
+    }
+
+    final long bytes = ((BitmapDrawable) icon).getBitmap().getByteCount();
+    icon = null;
+    snapshotIcon = false;
+    return bytes;
+  }
+
+  @Override
+  View touchTarget() {
+    return view;
+  }
+
+  @Override
+  boolean isReachable() {
+    if (view == null || view.getVisibility() == View.GONE) {
+      return false;
+    }
+
+    if (!ViewCompat.isAttachedToWindow(view)) {
+      // Detached views would never be laid out, unless their activity's window just hasn't been
+      // attached yet, e.g. when shown from onCreate
+      return isInPendingWindow(view);
+    }
+
+    if (!ViewCompat.isLaidOut(view)) {
+      // The target waits for the layout, afterwards we can tell whether it ends up on screen
+      return true;
+    }
+
+    return view.isShown() && view.getWidth() > 0 && view.getHeight() > 0
+        && view.getGlobalVisibleRect(new Rect());
+  }
+
+  /** Returns whether the given view is part of an activity's window that isn't attached yet **/
+  static boolean isInPendingWindow(View view) {
+    final Activity activity = UiUtil.activityOf(view.getContext());
+    if (activity == null || UiUtil.isFinishing(activity)) {
+      return false;
+    }
+
+    final View decor = activity.getWindow().peekDecorView();
+    return decor != null && decor == view.getRootView() && !ViewCompat.isAttachedToWindow(decor);
+  }
+
+  @Override
+  boolean refreshBounds() {
+    if (view == null || bounds == null) {
+      return false;
+    }
+
+    view.getLocationOnScreen(trackedLocation);
+    if (trackedLocation[0] == bounds.left && trackedLocation[1] == bounds.top) {
+      return false;
+    }
+
+    bounds.offsetTo(trackedLocation[0], trackedLocation[1]);
+    return true;
+  }
 }
@@ -16,6 +16,9 @@
 package com.getkeepsafe.taptargetview;
 
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import androidx.core.view.ViewCompat;
 import android.view.View;
 import android.view.ViewManager;
@@ -56,6 +59,104 @@ class ViewUtil {
     });
   }
 
+  /**
+   * Executes the given {@link java.lang.Runnable} when the view is laid out, or the given timeout
+   * runnable instead if that doesn't happen within the given time
+   */
+  static void onLaidOut(final View view, long timeoutMillis, final Runnable runnable,
+                        final Runnable timeout) {
+    if (isLaidOut(view)) {
+      runnable.run();
+      return;
+    }
+
+    final Handler handler = new Handler(Looper.getMainLooper());
+    final ViewTreeObserver.OnGlobalLayoutListener layoutListener =
+        new ViewTreeObserver.OnGlobalLayoutListener() {
+          @Override
+          public void onGlobalLayout() {
+            if (!isLaidOut(view)) {
+              return;
+            }
+            removeOnGlobalLayoutListener(view.getViewTreeObserver(), this);
+            handler.removeCallbacksAndMessages(null);
+            runnable.run();
+          }
+        };
+    view.getViewTreeObserver().addOnGlobalLayoutListener(layoutListener);
+    handler.postDelayed(new Runnable() {
+      @Override
+      public void run() {
+        removeOnGlobalLayoutListener(view.getViewTreeObserver(), layoutListener);
+        timeout.run();
+      }
+    }, timeoutMillis);
+  }
+
+  /**
+   * Executes the given {@link java.lang.Runnable} once the view's window has drawn its first
+   * frame and the main looper has become idle, or after the given timeout, whichever comes first
+   */
+  static void onIdleAfterFirstDraw(final View view, long timeoutMillis, final Runnable runnable) {
+    final Handler handler = new Handler(Looper.getMainLooper());
+    final IdleRunner idleRunner = new IdleRunner(handler, view, runnable);
+    handler.postDelayed(idleRunner, timeoutMillis);
+
+    if (isLaidOut(view)) {
+      Looper.myQueue().addIdleHandler(idleRunner);
+      return;
+    }
+
+    view.getViewTreeObserver().addOnPreDrawListener(idleRunner.preDrawListener);
+  }
+
+  /**
+   * Runs a runnable once, either when the looper is idle after the first draw or when posted as a
+   * timeout. Whichever comes first unregisters the others.
+   */
+  private static class IdleRunner implements Runnable, MessageQueue.IdleHandler {
+    private final Handler handler;
+    private final View view;
+    private final Runnable runnable;
+    boolean ran;
+
+    final ViewTreeObserver.OnPreDrawListener preDrawListener =
+        new ViewTreeObserver.OnPreDrawListener() {
+          @Override
+          public boolean onPreDraw() {
+            view.getViewTreeObserver().removeOnPreDrawListener(this);
+            // The draw itself is part of the current message, so the looper only becomes idle
+            // after it
+            if (!ran) {
+              Looper.myQueue().addIdleHandler(IdleRunner.this);
+            }
+            return true;
+          }
+        };
+
+    IdleRunner(Handler handler, View view, Runnable runnable) {
+      this.handler = handler;
+      this.view = view;
+      this.runnable = runnable;
+    }
+
+    @Override
+    public boolean queueIdle() {
+      run();
+      return false;
+    }
+
+    @Override
+    public void run() {
+      if (ran) return;
+      ran = true;
+      handler.removeCallbacks(this);
+      Looper.myQueue().removeIdleHandler(this);
+      view.getViewTreeObserver().removeOnPreDrawListener(preDrawListener);
+      runnable.run();
+    }
+  }
+
   @SuppressWarnings("deprecation")
   static void removeOnGlobalLayoutListener(ViewTreeObserver observer,
                                            ViewTreeObserver.OnGlobalLayoutListener listener) {